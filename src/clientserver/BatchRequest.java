@@ -0,0 +1,258 @@
+package clientserver;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * BatchRequest answers one request for the counts of many files: a list of names or a glob over the directory index,
+ * and any set of count options. All cache lookups are done in one bulk read; files with missing counts are scanned
+ * in parallel on a shared pool of server.batchThreads threads (default one per core). Results are streamed back in
+ * chunks as they become available, cached files first, and the request ends with the totals over all files.
+ */
+public class BatchRequest {
+    private static final int LINES_PER_CHUNK = 256; // Results sent together when more are ready at once
+    private static final ExecutorService scanExecutor = Executors.newFixedThreadPool(
+            Integer.getInteger("server.batchThreads", Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "batch-scan");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final CacheService<String> cache;
+    private final Path directory;
+    private final DirectoryIndex index;
+
+    /**
+     * Constructor for BatchRequest.
+     * @param cache Cache holding the counts
+     * @param directory Storage directory
+     * @param index Listing used to expand globs
+     */
+    public BatchRequest(CacheService<String> cache, Path directory, DirectoryIndex index) {
+        this.cache = cache;
+        this.directory = directory;
+        this.index = index;
+    }
+
+    /**
+     * Runs the batch.
+     * @param files File names without extension separated by ';', or a glob such as log-* (* selects every file)
+     * @param countOptions Count options separated by ';', or null, empty or all for all three
+     * @param partials Receives result text as it becomes available, or null to return everything at the end
+     * @return The rest of the response, ending with the totals
+     */
+    public String run(String files, String countOptions, Partials partials) throws IOException, InterruptedException {
+        List<String> options = parseCountOptions(countOptions);
+        if (options == null) {
+            return "\nInvalid count option. Supported count options: lines, words, characters, all";
+        }
+        StringBuilder collected = new StringBuilder();
+        Chunks chunks = new Chunks(partials != null ? partials : collected::append);
+        Set<String> fileNames = resolve(files);
+        if (fileNames == null) {
+            return "\nInvalid file pattern: " + files.trim();
+        }
+        long[] totals = new long[options.size()];
+        int notFound = 0;
+
+        // One bulk lookup for every key; files with all their counts cached are answered right away
+        List<CacheKey> keys = new ArrayList<>(fileNames.size() * options.size());
+        for (String fileName : fileNames) {
+            for (String option : options) {
+                keys.add(new CacheKey(fileName, option));
+            }
+        }
+        Map<CacheKey, String> cached = cache.handleServerBulkReadRequest(keys);
+        List<String> misses = new ArrayList<>();
+        for (String fileName : fileNames) {
+            long[] counts = new long[options.size()];
+            boolean complete = true;
+            for (int i = 0; i < options.size() && complete; i++) {
+                String value = cached.get(new CacheKey(fileName, options.get(i)));
+                complete = value != null;
+                counts[i] = complete ? Long.parseLong(value) : 0;
+            }
+            if (complete) {
+                chunks.add(formatCounts(fileName, options, counts, totals) + " (cached)");
+            } else {
+                misses.add(fileName);
+            }
+        }
+        chunks.flush();
+
+        // Scan the misses in parallel and send each result as it completes, batching those that finish together
+        CompletionService<Object> scans = new ExecutorCompletionService<>(scanExecutor);
+        List<Future<Object>> pending = new ArrayList<>(misses.size());
+        for (String fileName : misses) {
+            pending.add(scans.submit(() -> scan(fileName)));
+        }
+        try {
+            for (int completed = 0; completed < misses.size(); completed++) {
+                Future<Object> next = scans.poll();
+                if (next == null) {
+                    chunks.flush(); // Nothing else is ready; send what is, then wait
+                    next = scans.take();
+                }
+                Object result = next.get();
+                if (result instanceof String) {
+                    chunks.add((String) result);
+                    notFound++;
+                } else {
+                    ScanResult scan = (ScanResult) result;
+                    long[] counts = new long[options.size()];
+                    for (int i = 0; i < options.size(); i++) {
+                        counts[i] = scan.statistics().count(options.get(i));
+                    }
+                    chunks.add(formatCounts(scan.fileName(), options, counts, totals));
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            for (Future<Object> scan : pending) {
+                scan.cancel(true); // Only has an effect if the batch was abandoned
+            }
+        }
+        chunks.flush();
+
+        StringBuilder summary = new StringBuilder(collected);
+        summary.append("\nTotal over ").append(fileNames.size() - notFound).append(" files:");
+        for (int i = 0; i < options.size(); i++) {
+            summary.append(i == 0 ? " " : ", ").append(options.get(i)).append("=").append(totals[i]);
+        }
+        return summary.toString();
+    }
+
+    // Counts one file through the shared single-flight load, or returns the line reporting why it can't be counted
+    private Object scan(String fileName) {
+        try {
+            return new ScanResult(fileName, ClientHandler.loadStatistics(cache, directory, fileName));
+        } catch (NoSuchFileException e) {
+            return "\n" + fileName + ": not found";
+        } catch (IOException e) {
+            ServerLog.error("Failed to count " + fileName, e);
+            return "\n" + fileName + ": failed to count";
+        }
+    }
+
+    // Formats the counts of one file and adds them to the totals
+    private static String formatCounts(String fileName, List<String> options, long[] counts, long[] totals) {
+        StringBuilder line = new StringBuilder("\n").append(fileName).append(":");
+        for (int i = 0; i < options.size(); i++) {
+            line.append(i == 0 ? " " : ", ").append(options.get(i)).append("=").append(counts[i]);
+            totals[i] += counts[i];
+        }
+        return line.toString();
+    }
+
+    // Parses "lines;words" into count options, or returns null if one is unknown
+    private static List<String> parseCountOptions(String countOptions) {
+        if (countOptions == null || countOptions.isBlank() || countOptions.trim().equals("all")) {
+            return List.of("lines", "words", "characters");
+        }
+        List<String> options = new ArrayList<>();
+        for (String option : countOptions.split(";")) {
+            String trimmed = option.trim();
+            if (!trimmed.equals("lines") && !trimmed.equals("words") && !trimmed.equals("characters")) {
+                return null;
+            }
+            if (!options.contains(trimmed)) {
+                options.add(trimmed);
+            }
+        }
+        return options;
+    }
+
+    // Expands the file list or glob into file names with extension, in name order for globs, or null for a malformed glob
+    private Set<String> resolve(String files) {
+        Set<String> fileNames = new LinkedHashSet<>();
+        int wildcard = indexOfWildcard(files);
+        if (wildcard < 0) {
+            for (String name : files.split(";")) {
+                if (!name.isBlank()) {
+                    fileNames.add(name.trim() + ".txt");
+                }
+            }
+            return fileNames;
+        }
+
+        // Only the names starting with the glob's literal prefix need to be matched
+        PathMatcher matcher;
+        try {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + files.trim() + ".txt");
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+        String prefix = files.trim().substring(0, wildcard);
+        String after = "";
+        do {
+            DirectoryIndex.Page page = index.list(prefix, after, 1024);
+            for (Map.Entry<String, DirectoryIndex.FileInfo> file : page.files()) {
+                if (matcher.matches(Paths.get(file.getKey()))) {
+                    fileNames.add(file.getKey());
+                }
+            }
+            after = page.next();
+        } while (after != null);
+        return fileNames;
+    }
+
+    private static int indexOfWildcard(String files) {
+        String trimmed = files.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{' || c == '\\') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Receives parts of a response before the request completes.
+     */
+    public interface Partials {
+        void send(String text) throws IOException;
+    }
+
+    // Collects result lines and sends them as one part
+    private static final class Chunks {
+        private final Partials partials;
+        private final StringBuilder chunk = new StringBuilder();
+        private int lines;
+
+        private Chunks(Partials partials) {
+            this.partials = partials;
+        }
+
+        private void add(String line) throws IOException {
+            chunk.append(line);
+            if (++lines == LINES_PER_CHUNK) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (lines > 0) {
+                partials.send(chunk.toString());
+                chunk.setLength(0);
+                lines = 0;
+            }
+        }
+    }
+
+    private record ScanResult(String fileName, FileStatistics statistics) {
+    }
+}
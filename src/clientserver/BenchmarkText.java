@@ -0,0 +1,64 @@
+package clientserver;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * BenchmarkText generates the text files the benchmarks run on, from a fixed seed so runs are comparable.
+ */
+public final class BenchmarkText {
+    private BenchmarkText() {
+    }
+
+    /**
+     * Writes random words and line breaks until the file has the requested size.
+     * @param file File to create or overwrite
+     * @param size Number of bytes to write, rounded up to the end of a word
+     */
+    public static void writeText(Path file, long size) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long written = 0;
+            while (written < size) {
+                int length = 1 + random.nextInt(10);
+                for (int i = 0; i < length; i++) {
+                    writer.write('a' + random.nextInt(26));
+                }
+                writer.write(random.nextInt(12) == 0 ? '\n' : ' ');
+                written += length + 1;
+            }
+        }
+    }
+
+    /**
+     * Writes words drawn from a vocabulary with a skewed distribution, like natural text, which compresses like it.
+     * @param file File to create or overwrite
+     * @param size Number of bytes to write, rounded up to the end of a word
+     */
+    public static void writeWords(Path file, long size) throws IOException {
+        Random random = new Random(42);
+        String[] vocabulary = new String[5000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long written = 0;
+            while (written < size) {
+                double skewed = random.nextDouble();
+                String word = vocabulary[(int) (skewed * skewed * skewed * vocabulary.length)];
+                writer.write(word);
+                writer.write(random.nextInt(12) == 0 ? '\n' : ' ');
+                written += word.length() + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package clientserver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * BlockCompression is the deflate block format shared by compressed connections and compressed stored files.
+ * Data is cut into blocks of up to 64 KB that are compressed independently, each preceded by its raw and encoded
+ * lengths as two ints; a block deflate can't shrink is stored as is, with both lengths equal. Independent blocks let
+ * a reader decompress and count one block at a time without materializing the data, let an append add blocks to a
+ * compressed file without rewriting it, and let the blocks of a stored file be sent on a compressed connection verbatim.
+ *
+ * Compressed file: MAGIC, then blocks up to the end of the file. Stored files that don't start with MAGIC are raw.
+ * Compressed frame body: blocks decoding to exactly the length announced in the frame header.
+ * The deflate level is server.compressionLevel (default 1, the fastest); the level only matters to the writer.
+ */
+public final class BlockCompression {
+    public static final int BLOCK_SIZE = 64 * 1024; // Largest raw length of a block
+    static final byte[] MAGIC = {0, 'D', 'Z', 'B'}; // Starts every compressed file; never the start of a text file
+    static final int LEVEL = Integer.getInteger("server.compressionLevel", Deflater.BEST_SPEED);
+    private static final int HEADER_SIZE = 8; // Raw and encoded length of a block
+
+    private BlockCompression() {
+    }
+
+    /**
+     * Tells whether a stored file is compressed.
+     * @param channel Open stored file
+     * @return True if it starts with MAGIC
+     */
+    public static boolean isCompressed(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+        readFully(channel, start, 0);
+        return startsWithMagic(start.array(), start.position());
+    }
+
+    /**
+     * Tells whether a file is compressed, or for an upload, whether it would be mistaken for compressed if stored raw.
+     * @param file File to check
+     * @return True if it starts with MAGIC
+     */
+    public static boolean isCompressed(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return isCompressed(channel);
+        }
+    }
+
+    // Reads from an absolute position until the buffer is full or the file ends; true if it is full
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithMagic(byte[] bytes, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the complete blocks of a compressed file by reading their headers. A block an append is still writing
+     * at the end of the file is left out, so readers only ever see content that was fully written.
+     * @param channel Open compressed file
+     * @return End offset and content length of the complete blocks
+     */
+    public static Extent extent(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = MAGIC.length;
+        long length = 0;
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            if (!readFully(channel, header, position)) {
+                break;
+            }
+            long next = position + HEADER_SIZE + header.getInt(4);
+            if (next > size) {
+                break; // Still being appended
+            }
+            length += header.getInt(0);
+            position = next;
+        }
+        return new Extent(position, length);
+    }
+
+    /**
+     * Writes the content of a raw file as a compressed file.
+     * @param source Raw file
+     * @param target File to create or overwrite
+     * @param level Deflate level, usually LEVEL
+     */
+    public static void compressFile(Path source, Path target, int level) throws IOException {
+        Deflater deflater = new Deflater(level);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source), BLOCK_SIZE);
+             OutputStream file = Files.newOutputStream(target)) {
+            file.write(MAGIC);
+            BlockOutputStream out = new BlockOutputStream(file, deflater);
+            in.transferTo(out);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Counts the content of a compressed file one decompressed block at a time, up to its last complete block.
+     * @param file Compressed file
+     * @return Statistics of the decompressed content
+     */
+    public static FileStatistics count(Path file) throws IOException {
+        FileStatistics statistics = new FileStatistics();
+        Inflater inflater = new Inflater();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BLOCK_SIZE + HEADER_SIZE)) {
+            in.skipNBytes(MAGIC.length);
+            BlockInputStream blocks = new BlockInputStream(in, -1, inflater);
+            ByteBuffer block;
+            while ((block = blocks.nextBlock()) != null) {
+                statistics.update(block);
+            }
+        } finally {
+            inflater.end();
+        }
+        return statistics;
+    }
+
+    /**
+     * Writes the decompressed content of a compressed file to a stream.
+     * @param channel Open compressed file
+     * @param rawLength Length of the content to write, as found by extent, or -1 for all complete blocks
+     * @param out Stream receiving the raw content
+     */
+    public static void decompress(FileChannel channel, long rawLength, OutputStream out) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(MAGIC.length)), BLOCK_SIZE + HEADER_SIZE);
+            BlockInputStream blocks = new BlockInputStream(in, rawLength, inflater);
+            ByteBuffer block;
+            while ((block = blocks.nextBlock()) != null) {
+                out.write(block.array(), block.position(), block.remaining());
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * End offset and content length of the complete blocks of a compressed file.
+     * @param end Offset just past the last complete block
+     * @param contentLength Number of bytes those blocks decompress to
+     */
+    public record Extent(long end, long contentLength) {
+    }
+
+    /**
+     * Compresses what is written to it into blocks on the underlying stream. flush writes the pending data as a
+     * (possibly short) block, so a stream can be flushed at any point and reused for the next frame.
+     * The Deflater belongs to the caller, who ends it; closing this stream closes the underlying stream.
+     */
+    public static final class BlockOutputStream extends FilterOutputStream {
+        private final Deflater deflater;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] encoded = new byte[HEADER_SIZE + BLOCK_SIZE]; // A whole block, header first
+        private int length; // Raw bytes waiting in block
+        private long written; // Bytes of blocks written to the underlying stream
+
+        public BlockOutputStream(OutputStream out, Deflater deflater) {
+            super(out);
+            this.deflater = deflater;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            block[length++] = (byte) b;
+            if (length == BLOCK_SIZE) {
+                writeBlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                int copied = Math.min(count, BLOCK_SIZE - length);
+                System.arraycopy(bytes, offset, block, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+                if (length == BLOCK_SIZE) {
+                    writeBlock();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            out.flush();
+        }
+
+        /**
+         * Sends blocks of a compressed file as they are, after the pending data.
+         * @param channel Open compressed file
+         * @param end Offset of the end of the last block to send
+         * @param direct Channel of the underlying connection for a zero-copy transfer, or null to copy through it
+         */
+        public void writeEncoded(FileChannel channel, long end, WritableByteChannel direct) throws IOException {
+            flush();
+            WritableByteChannel target = direct != null ? direct : Channels.newChannel(out);
+            long position = MAGIC.length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("File was truncated while being sent");
+                }
+                position += transferred;
+            }
+        }
+
+        // Number of bytes of blocks written so far, headers included
+        public long written() {
+            return written;
+        }
+
+        // Compresses the pending data into one block, stored raw when deflate doesn't make it smaller. The header
+        // and data go out in a single write, so a file never holds a header without the start of its data.
+        private void writeBlock() throws IOException {
+            if (length == 0) {
+                return;
+            }
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int encodedLength = deflater.deflate(encoded, HEADER_SIZE, length);
+            if (!deflater.finished() || encodedLength >= length) {
+                encodedLength = length;
+                System.arraycopy(block, 0, encoded, HEADER_SIZE, length);
+            }
+            ByteBuffer.wrap(encoded, 0, HEADER_SIZE).putInt(length).putInt(encodedLength);
+            out.write(encoded, 0, HEADER_SIZE + encodedLength);
+            written += HEADER_SIZE + encodedLength;
+            length = 0;
+        }
+    }
+
+    /**
+     * Decompresses blocks from the underlying stream, either up to a known raw length (a frame body) or up to the
+     * end of the stream (a compressed file). Never reads past the last block, so what follows on a connection stays
+     * in the stream. A file's last block cut short by an append in progress ends the file. The Inflater belongs to the caller, who ends it; closing this stream leaves the underlying open.
+     */
+    public static final class BlockInputStream extends InputStream {
+        private final DataInputStream in;
+        private final Inflater inflater;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] encoded = new byte[BLOCK_SIZE];
+        private long remaining; // Raw bytes still to decode, -1 to decode up to the end of the stream
+        private int position; // Next byte of block to return
+        private int length; // Raw bytes in block
+
+        /**
+         * Constructor for BlockInputStream.
+         * @param in Stream positioned at the first block
+         * @param rawLength Number of raw bytes the blocks decode to, or -1 to read blocks up to the end of the stream
+         * @param inflater Inflater used for every block
+         */
+        public BlockInputStream(InputStream in, long rawLength, Inflater inflater) {
+            this.in = new DataInputStream(in);
+            this.inflater = inflater;
+            this.remaining = rawLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !decodeBlock()) {
+                return -1;
+            }
+            return block[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (position == length && !decodeBlock()) {
+                return -1;
+            }
+            int copied = Math.min(count, length - position);
+            System.arraycopy(block, position, bytes, offset, copied);
+            position += copied;
+            return copied;
+        }
+
+        /**
+         * Returns the rest of the current block, or the next block, without copying it.
+         * @return The decoded bytes, valid until the next call, or null at the end
+         */
+        public ByteBuffer nextBlock() throws IOException {
+            if (position == length && !decodeBlock()) {
+                return null;
+            }
+            ByteBuffer next = ByteBuffer.wrap(block, position, length - position);
+            position = length;
+            return next;
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream belongs to the caller
+        }
+
+        // Reads and decodes the next block; false at the end
+        private boolean decodeBlock() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            int rawLength;
+            int encodedLength;
+            try {
+                rawLength = in.readInt();
+                encodedLength = in.readInt();
+                if (rawLength <= 0 || rawLength > BLOCK_SIZE || encodedLength <= 0 || encodedLength > rawLength
+                        || (remaining > 0 && rawLength > remaining)) {
+                    throw new IOException("Invalid compressed block");
+                }
+                in.readFully(encodedLength == rawLength ? block : encoded, 0, encodedLength);
+            } catch (EOFException e) {
+                if (remaining < 0) {
+                    return false; // End of a compressed file, or of its complete blocks while one is appended
+                }
+                throw e;
+            }
+            if (encodedLength != rawLength) {
+                inflater.reset();
+                inflater.setInput(encoded, 0, encodedLength);
+                try {
+                    if (inflater.inflate(block, 0, rawLength) != rawLength || !inflater.finished()) {
+                        throw new IOException("Compressed block doesn't match its length");
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt compressed block", e);
+                }
+            }
+            if (remaining > 0) {
+                remaining -= rawLength;
+            }
+            position = 0;
+            length = rawLength;
+            return true;
+        }
+    }
+}
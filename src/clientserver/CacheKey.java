@@ -0,0 +1,14 @@
+package clientserver;
+
+/**
+ * CacheKey identifies a cached value by the file it was computed from and the operation that produced it,
+ * so CacheService can find every entry of a file without parsing key strings.
+ * @param fileName File name including extension, e.g. "test1.txt"
+ * @param operation Option or count option, e.g. "read" or "lines"
+ */
+public record CacheKey(String fileName, String operation) {
+    @Override
+    public String toString() {
+        return fileName + "," + operation;
+    }
+}
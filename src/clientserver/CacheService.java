@@ -0,0 +1,505 @@
+package clientserver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * CacheService class manages a bounded cache shared by all ClientHandler threads, keyed by (file, operation).
+ * Entries are spread over lock-striped segments: reads never block, writes and evictions only lock the segment
+ * that owns the key, and each segment evicts with its own pluggable EvictionPolicy (LRU by default).
+ * The bound is a total weight, which is the number of entries unless a weigher (e.g. value bytes) is supplied.
+ *
+ * Large values such as file contents can go to an optional second tier, an OffHeapCache with its own byte budget,
+ * so the on-heap segments only hold small results.
+ *
+ * A per-file index makes invalidating a file cost O(entries of that file). Each file also has a generation that
+ * invalidation bumps first, so its old entries stop being served before they are physically removed.
+ * Generations come from one counter, so a file never gets a generation it had before. Deleted files don't keep
+ * theirs: the generation moves into a small array of floors shared by the names hashing to the same slot, which is
+ * the generation of every file without one of its own.
+ * @param <V> Value type for the cache
+ */
+public class CacheService<V> {
+    private static final int MAX_SEGMENTS = 64; // Enough stripes to keep 32+ cores from contending on one lock
+    private static final int MIN_SEGMENT_WEIGHT = 16; // Smaller budgets stay in one segment, so one file's keys don't evict each other
+    private static final int GENERATION_FLOORS = 1024; // Slots holding the generations of deleted files
+
+    private final Segment<V>[] segments; // Internal storage for the cache
+    private final ConcurrentHashMap<String, Set<CacheKey>> fileIndex = new ConcurrentHashMap<>(); // Cached keys of each file
+    private final ConcurrentHashMap<String, Long> generations = new ConcurrentHashMap<>(); // Bumped on every invalidation, dropped on deletion
+    private final AtomicLongArray generationFloors = new AtomicLongArray(GENERATION_FLOORS); // Generation of files without an entry, by name hash
+    private final AtomicLong lastGeneration = new AtomicLong(); // Source of every generation
+    private final ConcurrentHashMap<CacheKey, Flight<?>> inFlight = new ConcurrentHashMap<>(); // Loads currently running
+    private final ToLongFunction<V> weigher; // Weight of a value counted against the bound
+    private final OffHeapCache offHeapTier; // Tier for large values, or null if disabled
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Constructor initializes the CacheService with a maximum number of entries and LRU eviction.
+    public CacheService(int maxSize) {
+        this(maxSize, value -> 1, LruPolicy::new, null);
+    }
+
+    /**
+     * Constructor initializes the CacheService with a weight bound and an eviction policy.
+     * @param maxWeight Maximum total weight of the cached values
+     * @param weigher Computes the weight of a value, e.g. 1 per entry or its size in bytes
+     * @param policyFactory Creates the eviction policy of each segment
+     * @param offHeapTier Tier for large values, or null to disable it
+     */
+    @SuppressWarnings("unchecked")
+    public CacheService(long maxWeight, ToLongFunction<V> weigher, Supplier<EvictionPolicy<CacheKey>> policyFactory, OffHeapCache offHeapTier) {
+        this.weigher = weigher;
+        this.offHeapTier = offHeapTier;
+
+        // Use a power of two number of segments, each with at least MIN_SEGMENT_WEIGHT of the bound
+        int segmentCount = Integer.highestOneBit((int) Math.max(1, Math.min(maxWeight / MIN_SEGMENT_WEIGHT, MAX_SEGMENTS)));
+        this.segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long segmentWeight = maxWeight / segmentCount + (i < maxWeight % segmentCount ? 1 : 0);
+            segments[i] = new Segment<>(segmentWeight, policyFactory.get());
+        }
+    }
+
+    /**
+     * Retrieves the value associated with the specified key from the cache.
+     * @param key Key to search for in the cache
+     * @return Value associated with the key, or null if not found
+     */
+    private V getElement(CacheKey key) {
+        Segment<V> segment = segmentFor(key);
+        Entry<V> entry = segment.entries.get(key);
+        if (entry == null || entry.generation() != fileVersion(key.fileName())) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+
+        // Recording the access is best effort: a read never waits for a writer holding the segment lock
+        if (segment.lock.tryLock()) {
+            try {
+                if (segment.entries.get(key) == entry) {
+                    segment.policy.recordAccess(key);
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return entry.value();
+    }
+
+    /**
+     * Puts a key-value pair into the cache, evicting entries of the same segment until it fits its bound.
+     * @param key Key for the cache entry
+     * @param value Value associated with the key in the cache
+     * @param version File generation the value was computed from
+     */
+    private void putElement(CacheKey key, V value, long version) {
+        Segment<V> segment = segmentFor(key);
+        long weight = weigher.applyAsLong(value);
+        segment.lock.lock();
+        try {
+            if (weight > segment.maxWeight) {
+                removeEntry(segment, key); // Too large to ever fit, don't keep an outdated value either
+                return;
+            }
+            indexKey(key);
+            if (version != fileVersion(key.fileName())) {
+                removeEntry(segment, key); // The file was invalidated while the value was being computed
+                return;
+            }
+            Entry<V> previous = segment.entries.put(key, new Entry<>(value, weight, version));
+            if (previous != null) {
+                segment.weight -= previous.weight();
+                segment.policy.recordAccess(key);
+            } else {
+                segment.policy.recordInsert(key);
+            }
+            segment.weight += weight;
+
+            while (segment.weight > segment.maxWeight) {
+                CacheKey victim = segment.policy.victim();
+                if (victim == null) {
+                    break;
+                }
+                removeEntry(segment, victim);
+                evictions.increment();
+                ServerLog.trace(() -> "Evicted: " + victim); // Log a sample of the evictions
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // Removes a key from a segment, its policy and the file index; the caller holds the segment lock
+    private void removeEntry(Segment<V> segment, CacheKey key) {
+        Entry<V> removed = segment.entries.remove(key);
+        segment.policy.recordRemoval(key);
+        if (removed != null) {
+            segment.weight -= removed.weight();
+        }
+        unindexKey(key);
+    }
+
+    // Adds a key to its file's index entry
+    private void indexKey(CacheKey key) {
+        fileIndex.compute(key.fileName(), (fileName, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    // Removes a key from its file's index entry, dropping the entry once the file has no cached keys
+    private void unindexKey(CacheKey key) {
+        fileIndex.computeIfPresent(key.fileName(), (fileName, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    // Finds the segment owning a key
+    private Segment<V> segmentFor(CacheKey key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * Handles a read request from the server by retrieving the value associated with the key.
+     * @param key Key to search for in the cache
+     * @return Value associated with the key, fetched for server read request
+     */
+    public V handleServerReadRequest(CacheKey key) {
+        ServerLog.trace(() -> "Handling server read request for key: " + key);
+        return getElement(key);
+    }
+
+    /**
+     * Handles a read request for many keys at once. Values are looked up without locking as in a single read, and
+     * the accesses are recorded with one lock acquisition per segment instead of one per key.
+     * @param keys Keys to search for in the cache
+     * @return Values found, by key; keys without a current value are absent
+     */
+    public Map<CacheKey, V> handleServerBulkReadRequest(Collection<CacheKey> keys) {
+        ServerLog.trace(() -> "Handling server bulk read request for " + keys.size() + " keys");
+        Map<CacheKey, V> found = new HashMap<>();
+        Map<Segment<V>, List<CacheKey>> accessed = new IdentityHashMap<>();
+        for (CacheKey key : keys) {
+            Segment<V> segment = segmentFor(key);
+            Entry<V> entry = segment.entries.get(key);
+            if (entry != null && entry.generation() == fileVersion(key.fileName())) {
+                found.put(key, entry.value());
+                accessed.computeIfAbsent(segment, unused -> new ArrayList<>()).add(key);
+            }
+        }
+        hits.add(found.size());
+        misses.add(keys.size() - found.size());
+
+        // Best effort, as for a single read
+        for (Map.Entry<Segment<V>, List<CacheKey>> segmentKeys : accessed.entrySet()) {
+            Segment<V> segment = segmentKeys.getKey();
+            if (segment.lock.tryLock()) {
+                try {
+                    for (CacheKey key : segmentKeys.getValue()) {
+                        if (segment.entries.containsKey(key)) {
+                            segment.policy.recordAccess(key);
+                        }
+                    }
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Handles a write request from the server by storing the key-value pair in the cache.
+     * @param key Key for the cache entry
+     * @param value Value associated with the key for server write request
+     */
+    public void handleServerWriteRequest(CacheKey key, V value) {
+        ServerLog.trace(() -> "Handling server write request for key: " + key);
+        putElement(key, value, fileVersion(key.fileName()));
+    }
+
+    /**
+     * Handles a write request for a value computed from a known file generation. The write is dropped if the file
+     * was invalidated after that generation was read, so a slow computation can't reinsert outdated data.
+     * @param key Key for the cache entry
+     * @param value Value associated with the key for server write request
+     * @param version Result of fileVersion taken before the value was computed
+     */
+    public void handleServerWriteRequest(CacheKey key, V value, long version) {
+        ServerLog.trace(() -> "Handling server write request for key: " + key);
+        putElement(key, value, version);
+    }
+
+    /**
+     * Handles a load request by running the loader at most once at a time per key and file generation. Concurrent
+     * callers for the same key wait for the running load and share its result instead of repeating the work.
+     * A removal request starts a new generation, so callers arriving after it start a fresh load rather than joining
+     * one that may have read the old file; the old load's cache writes are dropped by the versioned write. Only a
+     * newer flight replaces an older one, so a caller that took its generation just before a removal joins the
+     * flight of the new generation instead of replacing it and splitting the callers between two loads.
+     * @param key Key identifying the load
+     * @param loader Computes the result, typically caching it with handleServerWriteRequest along the way
+     * @param <T> Result type
+     * @return Result of the load this caller ran or joined
+     */
+    public <T> T handleServerLoadRequest(CacheKey key, Callable<T> loader) throws IOException {
+        long version = fileVersion(key.fileName());
+        Flight<T> flight = new Flight<>(new CompletableFuture<>(), version);
+        while (true) {
+            Flight<?> running = inFlight.putIfAbsent(key, flight);
+            if (running == null) {
+                break; // This caller leads the load
+            }
+            if (running.version() >= version) {
+                // A flight of a later generation also answers a caller that read the generation before it
+                ServerLog.trace(() -> "Joining in-flight load for key: " + key);
+                return awaitFlight(running);
+            }
+            inFlight.remove(key, running); // Belongs to an invalidated generation, don't join it
+        }
+
+        try {
+            T result = loader.call();
+            flight.future().complete(result);
+            return result;
+        } catch (Exception e) {
+            flight.future().completeExceptionally(e);
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // Waits for a load started by another caller
+    @SuppressWarnings("unchecked")
+    private static <T> T awaitFlight(Flight<?> flight) throws IOException {
+        try {
+            return (T) flight.future().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an in-flight load");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Handles a read request for a large value kept in the off-heap tier.
+     * @param key Key to search for in the cache
+     * @return The retained block, which the caller must release, or null if not found
+     */
+    public OffHeapCache.Block handleServerBlockReadRequest(CacheKey key) {
+        ServerLog.trace(() -> "Handling server block read request for key: " + key);
+        OffHeapCache.Block block = offHeapTier == null ? null : offHeapTier.get(key);
+        if (block != null && block.generation() != fileVersion(key.fileName())) {
+            block.release(); // Left over from before an invalidation
+            block = null;
+        }
+        if (block == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return block;
+    }
+
+    /**
+     * Handles a write request for a large value by copying it from a file into the off-heap tier.
+     * @param key Key for the cache entry
+     * @param source File holding the value
+     * @param length Number of bytes of the value
+     * @param version Result of fileVersion taken before the file was opened
+     */
+    public void handleServerBlockWriteRequest(CacheKey key, FileChannel source, long length, long version) throws IOException {
+        ServerLog.trace(() -> "Handling server block write request for key: " + key);
+        if (offHeapTier != null && version == fileVersion(key.fileName())) {
+            offHeapTier.put(key, source, length, version);
+        }
+    }
+
+    /**
+     * Returns the current generation of a file. Take it before computing a value from the file and pass it to
+     * handleServerWriteRequest.
+     * @param fileName Filename including extension
+     * @return Generation of the file, raised by every removal request
+     */
+    public long fileVersion(String fileName) {
+        Long generation = generations.get(fileName);
+        return generation != null ? generation : generationFloors.get(floorFor(fileName));
+    }
+
+    /**
+     * Handles a removal request from the server by removing elements associated with the specified filename.
+     * @param fileName Filename for which associated elements need to be removed
+     */
+    public void handleServerRemovalRequest(String fileName) {
+        ServerLog.trace(() -> "Handling server removal request for file: " + fileName);
+
+        // Bumping the generation first hides every existing entry of the file from readers immediately
+        long version = generations.merge(fileName, lastGeneration.incrementAndGet(), Math::max);
+        if (offHeapTier != null) {
+            offHeapTier.removeFile(fileName);
+        }
+
+        Set<CacheKey> keys = fileIndex.get(fileName);
+        if (keys == null) {
+            return;
+        }
+        for (CacheKey key : keys) {
+            Segment<V> segment = segmentFor(key);
+            segment.lock.lock();
+            try {
+                Entry<V> entry = segment.entries.get(key);
+                if (entry == null || entry.generation() < version) {
+                    removeEntry(segment, key); // Removes the associated entry unless it was rewritten meanwhile
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Handles the deletion of a file: invalidates it like a removal request, then forgets its generation so deleted
+     * names don't accumulate. The generation's floor slot is raised to it first, so the file's generation never goes
+     * back and values computed before the deletion stay hidden if the name is stored again.
+     * @param fileName Filename including extension
+     */
+    public void handleServerDeletionRequest(String fileName) {
+        handleServerRemovalRequest(fileName);
+        Long version = generations.get(fileName);
+        if (version != null) {
+            generationFloors.accumulateAndGet(floorFor(fileName), version, Math::max);
+            generations.remove(fileName, version); // Unless the file was invalidated again meanwhile
+        }
+    }
+
+    private static int floorFor(String fileName) {
+        int hash = fileName.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (GENERATION_FLOORS - 1);
+    }
+
+    /**
+     * Lists the files with values in either tier, so all of them can be invalidated when the changes to the
+     * storage directory are no longer known.
+     * @return Filenames including extension
+     */
+    public Set<String> cachedFileNames() {
+        Set<String> fileNames = new HashSet<>(fileIndex.keySet());
+        if (offHeapTier != null) {
+            fileNames.addAll(offHeapTier.fileNames());
+        }
+        return fileNames;
+    }
+
+    /**
+     * Visits every current entry of the on-heap tier without taking any lock, so it can run alongside requests.
+     * The view is weakly consistent: entries written or removed during the visit may or may not be seen.
+     * @param visitor Receives each key and value with the file generation the value was computed from
+     */
+    public void forEachEntry(EntryVisitor<V> visitor) {
+        for (Segment<V> segment : segments) {
+            for (Map.Entry<CacheKey, Entry<V>> entry : segment.entries.entrySet()) {
+                Entry<V> value = entry.getValue();
+                if (value.generation() == fileVersion(entry.getKey().fileName())) {
+                    visitor.visit(entry.getKey(), value.value(), value.generation());
+                }
+            }
+        }
+    }
+
+    // Number of reads that found a value
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    // Number of reads that found nothing
+    public long missCount() {
+        return misses.sum();
+    }
+
+    // Number of entries evicted to respect the bound
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    // Number of values the off-heap tier evicted to stay within its budget, 0 without the tier
+    public long offHeapEvictionCount() {
+        return offHeapTier == null ? 0 : offHeapTier.evictionCount();
+    }
+
+    // Bytes of the off-heap budget currently unused, 0 without the tier
+    public long offHeapFreeBytes() {
+        return offHeapTier == null ? 0 : offHeapTier.freeBytes();
+    }
+
+    // Current number of entries across all segments
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.entries.size();
+        }
+        return size;
+    }
+
+    // Prints the contents of the cache (for debugging/testing purposes).
+    public void printCacheContents() {
+        for (Segment<V> segment : segments) {
+            for (Map.Entry<CacheKey, Entry<V>> entry : segment.entries.entrySet()) {
+                CacheKey key = entry.getKey();
+                V value = entry.getValue().value();
+                System.out.println("Key: " + key + ", Value: " + value);
+            }
+        }
+        System.out.println("Hits: " + hitCount() + ", Misses: " + missCount() + ", Evictions: " + evictionCount());
+    }
+
+    // Receives the entries visited by forEachEntry
+    public interface EntryVisitor<V> {
+        void visit(CacheKey key, V value, long generation);
+    }
+
+    // A cached value together with the weight it was charged and the file generation it belongs to
+    private record Entry<V>(V value, long weight, long generation) {
+    }
+
+    // A running load and the file generation it started from
+    private record Flight<T>(CompletableFuture<T> future, long version) {
+    }
+
+    // One stripe of the cache: its own lock, entries, eviction policy and share of the weight bound
+    private static final class Segment<V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final ConcurrentHashMap<CacheKey, Entry<V>> entries = new ConcurrentHashMap<>();
+        final EvictionPolicy<CacheKey> policy;
+        final long maxWeight;
+        long weight; // Guarded by lock
+
+        Segment(long maxWeight, EvictionPolicy<CacheKey> policy) {
+            this.maxWeight = maxWeight;
+            this.policy = policy;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package clientserver;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * CacheSnapshot saves the cached line/word/character counts to disk and loads them back at startup, so a restarted
+ * server doesn't recompute every count from scratch. Each file's counts are stored with the file's size and
+ * modification time, and are only loaded if the file still matches both.
+ *
+ * Format: int MAGIC, int VERSION, int fileCount, then per file: UTF fileName, long size, long lastModified,
+ * int entryCount and entryCount pairs of UTF operation, UTF value.
+ */
+public class CacheSnapshot {
+    private static final int MAGIC = 0x43534353; // "CSCS"
+    private static final int VERSION = 1;
+    private static final Set<String> COUNT_OPTIONS = Set.of("lines", "words", "characters");
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * Writes the counts currently in the cache. The cache is read without locking and the snapshot replaces the
+     * previous one with an atomic rename, so requests are never blocked and a crash never leaves a torn file.
+     * Each file's counts are saved with the size and modification time recorded when they were computed, never
+     * with attributes read now, which may already belong to a newer version of the file.
+     * @param cache Cache to save
+     * @param runningTotals Stamps of the cached counts
+     * @param snapshotFile Snapshot to write
+     * @return Number of entries written
+     */
+    public static int save(CacheService<String> cache, RunningTotals runningTotals, Path snapshotFile) throws IOException {
+        Map<String, Map<String, String>> countsByFile = new TreeMap<>();
+        Map<String, Long> generations = new HashMap<>();
+        cache.forEachEntry((key, value, generation) -> {
+            if (COUNT_OPTIONS.contains(key.operation())) {
+                countsByFile.computeIfAbsent(key.fileName(), fileName -> new TreeMap<>()).put(key.operation(), value);
+                generations.merge(key.fileName(), generation, (first, next) -> first.equals(next) ? first : -1L);
+            }
+        });
+
+        // Files whose counts span generations, or weren't stamped, are left out rather than saved unverifiable
+        Map<String, RunningTotals.Stamp> stamps = new HashMap<>();
+        for (String fileName : countsByFile.keySet()) {
+            long generation = generations.get(fileName);
+            RunningTotals.Stamp stamp = generation < 0 ? null : runningTotals.stamp(fileName, generation);
+            if (stamp != null) {
+                stamps.put(fileName, stamp);
+            }
+        }
+
+        Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        int entries = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stamps.size());
+            for (Map.Entry<String, Map<String, String>> file : countsByFile.entrySet()) {
+                RunningTotals.Stamp stamp = stamps.get(file.getKey());
+                if (stamp == null) {
+                    continue;
+                }
+                out.writeUTF(file.getKey());
+                out.writeLong(stamp.size());
+                out.writeLong(stamp.modifiedTime());
+                out.writeInt(file.getValue().size());
+                for (Map.Entry<String, String> count : file.getValue().entrySet()) {
+                    out.writeUTF(count.getKey());
+                    out.writeUTF(count.getValue());
+                    entries++;
+                }
+            }
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return entries;
+    }
+
+    /**
+     * Loads a snapshot into the cache, skipping the counts of files that changed or disappeared since it was taken.
+     * @param cache Cache to fill
+     * @param runningTotals Receives the stamps of the loaded counts, so later snapshots keep them
+     * @param snapshotFile Snapshot to read; a missing file loads nothing
+     * @param storageDirectory Directory holding the cached files
+     * @return Number of entries loaded
+     */
+    public static int load(CacheService<String> cache, RunningTotals runningTotals, Path snapshotFile, Path storageDirectory) throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized cache snapshot format: " + snapshotFile);
+            }
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                String fileName = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int entryCount = in.readInt();
+                boolean valid = matches(storageDirectory.resolve(fileName), size, lastModified);
+                long version = cache.fileVersion(fileName);
+                if (valid) {
+                    runningTotals.recordStamp(fileName, version, new RunningTotals.Stamp(size, lastModified));
+                }
+                for (int j = 0; j < entryCount; j++) {
+                    String operation = in.readUTF();
+                    String value = in.readUTF();
+                    if (valid) {
+                        cache.handleServerWriteRequest(new CacheKey(fileName, operation), value, version);
+                        loaded++;
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // Whether a file still has the size and modification time recorded in the snapshot
+    private static boolean matches(Path file, long size, long lastModified) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package clientserver;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class Client {
+    public static void main(String[] args) {
+        // -Dclient.mode=load generates load instead of prompting for commands, configured by the load.* properties
+        if (System.getProperty("client.mode", "interactive").equals("load")) {
+            try {
+                LoadGenerator.main(args);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        // -Dclient.protocol=2 keeps a single framed connection open for the whole session, compressed unless
+        // -Dclient.compression=false or the server declines
+        if (Integer.getInteger("client.protocol", 1) >= FrameProtocol.VERSION) {
+            try {
+                runFramedSession();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        try {
+            // Continuously interact with the server
+            while (true) {
+                // Establish a connection to the server
+                Socket clientSocket = SocketChannel.open(new InetSocketAddress("localhost", 8080)).socket();
+
+                // Setup input and output streams for communication
+                BufferedReader userInput = new BufferedReader(new InputStreamReader(System.in));
+                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
+
+                // User interaction to input file name, option, and count option
+                System.out.println("Enter text file name (without extension):");
+                String fileName = userInput.readLine();
+                System.out.println("Enter option (store/get/read/totals/update/append/remove/stats/exit):");
+                String option = userInput.readLine();
+
+                // Conditionals that determines how the options will be sent to the server
+                if (option.equals("store") || option.equals("update") || option.equals("append") || option.equals("remove") || option.equals("exit") || option.equals("totals") || option.equals("stats")) {
+                    sendFileToServer(fileName, option, clientSocket, out, in, userInput);
+                } else {
+                    // If the initial conditional is false, then the user is allowed to add another request for a count option
+                    System.out.println("Enter count option (lines/words/characters):");
+                    String countOption = userInput.readLine();
+
+                    // Construct the full message to send to the server
+                    String messageToSend = fileName + "," + option + "," + countOption;
+                    out.println(messageToSend);
+
+                    // Writes the full response from the server
+                    serverResponse(in);
+                }
+                clientSocket.close(); // Close the socket after completing communication with the server
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Method that determines how the store, update, append, totals, remove, and exit options are handled
+    private static void sendFileToServer(String fileName, String option, Socket clientSocket, PrintWriter out, BufferedReader in, BufferedReader userInput) throws IOException {
+        // Handling for the store, update and append options
+        if (option.equals("store") || option.equals("update") || option.equals("append")) {
+            System.out.println("Enter the file path to upload:");
+            String filePath = userInput.readLine();
+
+            // Stream the file content to the server after announcing its length
+            File file = new File(filePath);
+            if (file.exists() && file.isFile()) {
+                try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    out.println(fileName + "," + option + "," + fileChannel.size()); // Sends this message to the server
+                    transferFile(fileChannel, clientSocket);
+                }
+                serverResponse(in);
+            } else {
+                System.out.println("File not found or invalid path.");
+            }
+            return;
+        }
+
+        out.println(fileName + "," + option); // Sends this message to the server
+        // Handling for remove, totals and stats
+        if (option.equals("remove") || option.equals("totals") || option.equals("stats")){
+            serverResponse(in);
+        // Handling for exit message
+        } else {
+            System.out.println("Exit command sent to server. Terminating client.");
+            System.exit(0);
+        }
+    }
+
+    // Sends every command over one persistent connection using the framed protocol
+    private static void runFramedSession() throws IOException {
+        Deflater deflater = new Deflater(BlockCompression.LEVEL);
+        Inflater inflater = new Inflater();
+        try (Socket clientSocket = SocketChannel.open(new InetSocketAddress("localhost", 8080)).socket()) {
+            BufferedReader userInput = new BufferedReader(new InputStreamReader(System.in));
+            InputStream rawIn = new BufferedInputStream(clientSocket.getInputStream());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+
+            // Negotiate the protocol version before sending any frame
+            boolean offerDeflate = Boolean.parseBoolean(System.getProperty("client.compression", "true"));
+            out.write(FrameProtocol.hello(FrameProtocol.VERSION, offerDeflate).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String reply = FrameProtocol.readLine(rawIn);
+            if (reply == null || FrameProtocol.negotiate(reply) < FrameProtocol.VERSION) {
+                System.out.println("Server does not support protocol version " + FrameProtocol.VERSION + ".");
+                return;
+            }
+            boolean deflate = offerDeflate && FrameProtocol.offersDeflate(reply);
+            DataInputStream in = new DataInputStream(rawIn);
+
+            int requestId = 0;
+            while (true) {
+                System.out.println("Enter text file name (without extension):");
+                String fileName = userInput.readLine();
+                System.out.println("Enter option (store/get/read/totals/update/append/remove/stats/exit):");
+                String option = userInput.readLine();
+
+                if (option.equals("exit")) {
+                    FrameProtocol.writeRequestHeader(out, ++requestId, FrameProtocol.OP_CLOSE, fileName, option, null, 0);
+                    out.flush();
+                    System.out.println("Session closed. Terminating client.");
+                    return;
+                }
+
+                String countOption = null;
+                File upload = null;
+                if (option.equals("store") || option.equals("update") || option.equals("append")) {
+                    System.out.println("Enter the file path to upload:");
+                    upload = new File(userInput.readLine());
+                    if (!upload.exists() || !upload.isFile()) {
+                        System.out.println("File not found or invalid path.");
+                        continue;
+                    }
+                } else if (!option.equals("remove") && !option.equals("totals") && !option.equals("stats")) {
+                    System.out.println("Enter count option (lines/words/characters):");
+                    countOption = userInput.readLine();
+                }
+
+                if (upload == null) {
+                    FrameProtocol.writeRequestHeader(out, ++requestId, FrameProtocol.OP_REQUEST, fileName, option, countOption, 0);
+                    out.flush();
+                } else if (deflate) {
+                    // The payload is compressed block by block as the file is read
+                    FrameProtocol.writeRequestHeader(out, ++requestId, FrameProtocol.OP_REQUEST, fileName, option, null, upload.length());
+                    BlockCompression.BlockOutputStream payload = new BlockCompression.BlockOutputStream(out, deflater);
+                    Files.copy(upload.toPath(), payload);
+                    payload.flush();
+                } else {
+                    // The payload follows the header straight from the file
+                    try (FileChannel fileChannel = FileChannel.open(upload.toPath(), StandardOpenOption.READ)) {
+                        FrameProtocol.writeRequestHeader(out, ++requestId, FrameProtocol.OP_REQUEST, fileName, option, null, fileChannel.size());
+                        out.flush();
+                        transferFile(fileChannel, clientSocket);
+                    }
+                }
+
+                // A batch is answered in several frames; the last one isn't partial
+                FrameProtocol.ResponseHeader header;
+                do {
+                    header = FrameProtocol.readResponseHeader(in);
+                    InputStream body = deflate ? new BlockCompression.BlockInputStream(in, header.length(), inflater) : in;
+                    printBody(body, header.length());
+                } while (header.status() == FrameProtocol.STATUS_PARTIAL);
+                System.out.println();
+            }
+        } finally {
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    // Copies a response body to the console in bounded chunks, so bodies of any length (even over 2 GB) stream through
+    private static void printBody(InputStream body, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException("Response ended " + remaining + " bytes early");
+            }
+            System.out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        System.out.flush();
+    }
+
+    // Sends a whole file over the socket without loading it into memory
+    private static void transferFile(FileChannel fileChannel, Socket clientSocket) throws IOException {
+        WritableByteChannel target = clientSocket.getChannel() != null ? clientSocket.getChannel() : Channels.newChannel(clientSocket.getOutputStream());
+        long position = 0;
+        long size = fileChannel.size();
+        while (position < size) {
+            long transferred = fileChannel.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                throw new IOException("File was truncated while being sent"); // The announced length can't be met
+            }
+            position += transferred;
+        }
+    }
+
+    private static void serverResponse(BufferedReader in) throws IOException {
+        // Writes the full response from the server
+        String serverResponse;
+        while ((serverResponse = in.readLine()) != null) {
+            System.out.println(serverResponse);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,675 @@
+package clientserver;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+
+class ClientHandler implements Runnable {
+    private static final String[] COUNT_OPTIONS = {"lines", "words", "characters"};
+    private static final String INCOMING_DIRECTORY = ".incoming"; // Uploads in progress, inside the storage directory
+    private static final Object[] FILE_LOCKS = new Object[256]; // Serializes changes to stored files, striped by name hash
+    static final DirectoryIndex DIRECTORY_INDEX = new DirectoryIndex(Paths.get("src", "storageFiles")); // Listing served by get
+    private static final int LIST_PAGE_SIZE = Integer.getInteger("server.listPageSize", 100); // Files per get reply
+    static final ServerMetrics METRICS = new ServerMetrics(); // Request counters and latencies, exposed over JMX and by stats
+    static final RunningTotals RUNNING_TOTALS = new RunningTotals(); // Statistics of scanned files, kept current by appends
+    static final ContentStore CONTENT_STORE = new ContentStore(Paths.get("src", "storageFiles"), Paths.get("src", "storageFiles", INCOMING_DIRECTORY)); // Deduplicated file content
+    private static final boolean WIRE_COMPRESSION = Boolean.parseBoolean(System.getProperty("server.wireCompression", "true")); // Agree to compressed framed sessions
+    private static final boolean COMPRESS_AT_REST = Boolean.getBoolean("server.compressAtRest"); // Store new files compressed
+    private static final long READ_CACHE_MAX_BYTES = Long.getLong("server.readCacheMaxBytes", 1024 * 1024); // Largest file content cached by read
+
+    static {
+        for (int i = 0; i < FILE_LOCKS.length; i++) {
+            FILE_LOCKS[i] = new Object();
+        }
+    }
+
+    private final Socket clientSocket;
+    private final Semaphore semaphore;
+    private final CacheService<String> clientCache;
+    private final ExecutorService requestExecutor;
+    File programDirectory = new File("src/storageFiles");
+
+    /**
+     * Constructor for ClientHandler.
+     * @param clientSocket Socket for client-server communication
+     * @param semaphore Semaphore limiting simultaneous connections
+     * @param sharedCache Shared cache among clients
+     * @param requestExecutor Executor running pipelined requests of framed sessions
+     */
+    public ClientHandler(Socket clientSocket, Semaphore semaphore, CacheService<String> sharedCache, ExecutorService requestExecutor) {
+        this.clientSocket = clientSocket;
+        this.semaphore = semaphore;
+        this.clientCache = sharedCache;
+        this.requestExecutor = requestExecutor;
+    }
+
+    @Override
+    public void run() {
+        boolean sessionStarted = false;
+        try {
+            // Setup input and output streams for communication. Raw bytes are kept buffered in an InputStream so a
+            // store/update payload or a framed session isn't swallowed by a character reader.
+            InputStream in = new BufferedInputStream(clientSocket.getInputStream());
+            OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream());
+
+            String clientMessage = FrameProtocol.readLine(in);
+            if (clientMessage != null && FrameProtocol.isHello(clientMessage)) {
+                // Version negotiation: answer with the highest version both sides support
+                int version = FrameProtocol.negotiate(clientMessage);
+                boolean deflate = version >= FrameProtocol.VERSION && WIRE_COMPRESSION && FrameProtocol.offersDeflate(clientMessage);
+                out.write(FrameProtocol.hello(version, deflate).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                if (version >= FrameProtocol.VERSION) {
+                    // The session outlives this request, so its reader loop moves to a virtual thread and frees
+                    // the current (possibly pooled) thread. The session closes the socket when it ends.
+                    Thread.startVirtualThread(new FramedSession(clientSocket, in, this, requestExecutor, deflate));
+                    sessionStarted = true;
+                    return;
+                }
+                clientMessage = FrameProtocol.readLine(in);
+            }
+            if (clientMessage == null) {
+                return; // Client disconnected without sending a request
+            }
+
+            // Process client message and send the response to the Client
+            METRICS.addBytesIn(clientMessage.length() + 1);
+            BatchRequest.Partials partials = text -> {
+                // Batch results go out as soon as they are ready, ahead of the rest of the response
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                METRICS.addBytesOut(bytes.length);
+                out.write(bytes);
+                out.flush();
+            };
+            ServerResponse response = processClientMessage(clientMessage, in, partials).append("\n");
+            METRICS.addBytesOut(response.length());
+            response.writeTo(out, clientSocket.getChannel());
+        } catch (IOException | InterruptedException e) {
+            ServerLog.error("Failed to serve a request", e);
+        } finally {
+            if (!sessionStarted) {
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    ServerLog.error("Failed to close a connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes a single request, holding a semaphore permit only while it runs. Uploads are received before,
+     * so a slow client doesn't occupy a permit while it sends its file.
+     * @param fileName File name without extension
+     * @param option Requested option
+     * @param countOption Requested count option, or null if none
+     * @param upload Received upload for store/update, or null
+     * @param partials Receives parts of a batch response early, or null to return them with the response
+     * @return Response generated for the request
+     */
+    ServerResponse processAdmittedRequest(String fileName, String option, String countOption, Path upload, BatchRequest.Partials partials) throws InterruptedException {
+        long requested = System.nanoTime();
+        semaphore.acquire(); // Acquire semaphore before handling client request
+        long admitted = System.nanoTime();
+        try {
+            return processRequest(fileName, option, countOption, upload, partials);
+        } finally {
+            semaphore.release(); // Release semaphore after handling client request
+            METRICS.recordRequest(option, admitted - requested, System.nanoTime() - admitted);
+            if (upload != null) {
+                deleteUpload(upload); // Left over only if the request didn't commit it
+            }
+        }
+    }
+
+    /**
+     * Receives an upload of known length into a temporary file next to the stored files, so it can later replace
+     * its target with an atomic rename. The upload is hashed as it arrives and the temporary file is named by its
+     * digest, which the content store uses to deduplicate it.
+     * @param in Stream positioned at the upload
+     * @param length Number of bytes to receive
+     * @return The temporary file
+     */
+    Path receiveUpload(InputStream in, long length) throws IOException {
+        Path incomingDirectory = programDirectory.toPath().resolve(INCOMING_DIRECTORY);
+        Files.createDirectories(incomingDirectory);
+        Path upload = Files.createFile(incomingDirectory.resolve("upload-" + UUID.randomUUID() + ".tmp")); // Default permissions, unlike createTempFile
+        METRICS.addBytesIn(length);
+        MessageDigest digest = ContentStore.sha256();
+        try (FileChannel channel = FileChannel.open(upload, StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(new DigestInputStream(in, digest));
+            long position = 0;
+            while (position < length) {
+                long transferred = channel.transferFrom(source, position, length - position);
+                if (transferred <= 0) {
+                    throw new EOFException("Upload ended after " + position + " of " + length + " bytes");
+                }
+                position += transferred;
+            }
+            return CONTENT_STORE.nameByDigest(upload, digest.digest());
+        } catch (IOException e) {
+            Files.deleteIfExists(upload);
+            throw e;
+        }
+    }
+
+    /**
+     * Processes the client's message and generates a response.
+     * @param message Client's message sent to the server
+     * @param in Connection input, positioned right after the message
+     * @param partials Receives parts of a batch response early, or null to return them with the response
+     * @return Response generated based on the client's message
+     */
+    ServerResponse processClientMessage(String message, InputStream in, BatchRequest.Partials partials) throws IOException, InterruptedException {
+        String[] parts = message.split(",");
+        if (parts.length != 2 && parts.length != 3) {
+            return new ServerResponse("Invalid message format. Please provide the file name, option, and count option as prompted by the Client.");
+        }
+        String option = parts[1].trim();
+        String countOption = parts.length == 3 ? parts[2].trim() : null;
+        if (!isUpload(option)) {
+            return processAdmittedRequest(parts[0].trim(), option, countOption, null, partials);
+        }
+
+        // Uploads are sent as "name,store,<length>" (or update/append) followed by the bytes. Without a length, the original format,
+        // the upload is whatever arrives in a single read.
+        Path upload;
+        if (countOption != null) {
+            long length;
+            try {
+                length = Long.parseLong(countOption);
+            } catch (NumberFormatException e) {
+                return new ServerResponse("Invalid upload length.");
+            }
+            upload = receiveUpload(in, length);
+        } else {
+            byte[] buffer = new byte[8192];
+            int bytesRead = in.read(buffer);
+            upload = receiveUpload(new ByteArrayInputStream(buffer, 0, Math.max(bytesRead, 0)), Math.max(bytesRead, 0));
+        }
+        return processAdmittedRequest(parts[0].trim(), option, null, upload, partials);
+    }
+
+    /**
+     * Dispatches a parsed request and generates a response.
+     * @param name File name without extension
+     * @param option Requested option
+     * @param countOption Requested count option, or null if none
+     * @param upload Received upload for store/update, or null
+     * @param partials Receives parts of a batch response early, or null to return them with the response
+     * @return Response generated for the request
+     */
+    private ServerResponse processRequest(String name, String option, String countOption, Path upload, BatchRequest.Partials partials) {
+        if (option.equals("batch")) {
+            return processBatch(name, countOption, partials);
+        }
+        String fileName = name + ".txt";
+        ServerResponse response = new ServerResponse("Processing " + fileName + ": \n");
+
+        if (countOption != null) {
+            // Check cache for the count option; read looks up the file content in the off-heap tier below
+            String cachedCountOption = clientCache.handleServerReadRequest(new CacheKey(fileName, countOption));
+            if (cachedCountOption != null) {
+                response.append("\nCache hit for ").append(fileName).append(", ").append(countOption).append(": ").append(cachedCountOption);
+            }
+
+            // The listing comes from the directory index, which is always current, so it is no longer cached per file
+            long version = clientCache.fileVersion(fileName); // Results computed below are only cached for this version of the file
+            if (option.equals("get") || option.startsWith("get:")) {
+                response.append("\nFiles on server: ").append(getFileNames(option.substring(3)));
+            } else if (option.equals("read")) {
+                appendFileContent(response, fileName, version);
+            } else {
+                return new ServerResponse("\nInvalid option. Supported options: lines, words, characters, get_file_names, read_file_content, get_system_totals, exit, store");
+            }
+            if(cachedCountOption == null){
+                // Calculate the count option if it was not found in the cache; one scan caches all three counts
+                switch (countOption) {
+                    case "lines":
+                        response.append("\nLine count for ").append(fileName).append(": ").append(loadStatistics(fileName).lines());
+                        break;
+                    case "words":
+                        response.append("\nWord count for ").append(fileName).append(": ").append(loadStatistics(fileName).words());
+                        break;
+                    case "characters":
+                        response.append("\nCharacter count for ").append(fileName).append(": ").append(loadStatistics(fileName).characters());
+                        break;
+                    default:
+                        response.close();
+                        return new ServerResponse("Invalid count option.");
+                }
+            }
+        } else {
+            switch (option) {
+                case "update":
+                    // Receive and store the updated file content
+                    String updateResponse = updateFile(fileName, upload);
+                    response.append(updateResponse);
+                    break;
+                case "append":
+                    // Add the received content to the end of the file
+                    String appendResponse = appendFile(fileName, upload);
+                    response.append(appendResponse);
+                    break;
+                case "remove":
+                    // Remove the file from the server
+                    String removeResponse = removeFile(fileName);
+                    response.append(removeResponse);
+                    break;
+                case "store":
+                    // Store the file in the server
+                    String storeResponse = storeFile(fileName, upload);
+                    response.append(storeResponse);
+                    break;
+                case "totals":
+                    response.append("\nSystem totals: ").append(getSystemTotals(fileName));
+                    break;
+                case "stats":
+                    // Local clients only; the counters describe the whole server
+                    if (clientSocket != null && !clientSocket.getInetAddress().isLoopbackAddress()) {
+                        return new ServerResponse("Stats are only available to local clients.");
+                    }
+                    return new ServerResponse("Server stats:\n").append(METRICS.report());
+                case "exit":
+                    return new ServerResponse("Client termination requested.");
+                default:
+                    return new ServerResponse("Invalid option.");
+            }
+        }
+        // Return response to client
+        response.append("\nDone.");
+        return response;
+    }
+
+    /**
+     * Answers a batch request for the counts of many files, streaming results through partials as they complete.
+     * @param files File names separated by ';', or a glob
+     * @param countOptions Count options separated by ';', or null for all three
+     * @param partials Receives results early, or null to return them with the response
+     * @return Rest of the response, ending with the totals
+     */
+    private ServerResponse processBatch(String files, String countOptions, BatchRequest.Partials partials) {
+        String header = "Processing batch " + files + ": \n";
+        try {
+            if (partials != null) {
+                partials.send(header);
+            }
+            String results = new BatchRequest(clientCache, programDirectory.toPath(), DIRECTORY_INDEX).run(files, countOptions, partials);
+            return new ServerResponse(partials != null ? "" : header).append(results).append("\nDone.");
+        } catch (IOException e) {
+            ServerLog.error("Failed to process batch " + files, e);
+            return new ServerResponse("\nBatch failed.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ServerResponse("\nBatch interrupted.");
+        }
+    }
+
+    /**
+     * Scans a file once and caches its line, word and character counts together. Concurrent requests for the same
+     * file share a single scan.
+     * @param fileName Filename including extension
+     * @return Statistics of the file, all zero if it can't be read
+     */
+    private FileStatistics loadStatistics(String fileName) {
+        try {
+            return loadStatistics(clientCache, programDirectory.toPath(), fileName);
+        } catch (IOException e) {
+            ServerLog.error("Failed to count " + fileName, e);
+            return new FileStatistics();
+        }
+    }
+
+    /**
+     * Scans a stored file and caches its counts, sharing the scan with any concurrent load of the same file. Content
+     * already counted under another name isn't scanned again. Also used by the storage watcher to precompute counts of changed files.
+     * @param cache Cache receiving the counts
+     * @param directory Storage directory
+     * @param fileName Filename including extension
+     * @return Statistics of the file
+     */
+    static FileStatistics loadStatistics(CacheService<String> cache, Path directory, String fileName) throws IOException {
+        return cache.handleServerLoadRequest(new CacheKey(fileName, "statistics"), () -> {
+            long version = cache.fileVersion(fileName); // Counts of a scan that overlaps an invalidation are dropped
+            Path filePath = directory.resolve(fileName);
+            RunningTotals.Stamp stamp = RunningTotals.Stamp.of(filePath);
+            FileStatistics statistics = CONTENT_STORE.statistics(filePath);
+            boolean unchanged = true;
+            if (statistics == null) {
+                statistics = ParallelStatistics.scan(filePath);
+                unchanged = stamp.equals(RunningTotals.Stamp.of(filePath)); // Otherwise it changed while it was counted
+                if (unchanged) {
+                    CONTENT_STORE.recordStatistics(filePath, statistics, stamp);
+                }
+            }
+            cacheStatistics(cache, fileName, statistics, version);
+            if (unchanged) {
+                RUNNING_TOTALS.record(fileName, statistics, version, stamp);
+            } else {
+                RUNNING_TOTALS.remove(fileName);
+            }
+            return statistics;
+        });
+    }
+
+    // Caches the three counts of a file for one file generation
+    private static void cacheStatistics(CacheService<String> cache, String fileName, FileStatistics statistics, long version) {
+        for (String countOption : COUNT_OPTIONS) {
+            cache.handleServerWriteRequest(new CacheKey(fileName, countOption), String.valueOf(statistics.count(countOption)), version);
+        }
+    }
+
+    /**
+     * Tells whether an option carries an upload after its request line or frame header.
+     * @param option Requested option
+     * @return True for store, update and append
+     */
+    static boolean isUpload(String option) {
+        return option.equals("store") || option.equals("update") || option.equals("append");
+    }
+
+    // Stores a file passed in by the client
+    private String storeFile(String fileName, Path upload) {
+        try {
+            commitUpload(fileName, upload);
+            return "File stored successfully.";
+        } catch (IOException e) {
+            ServerLog.error("Failed to store " + fileName, e);
+            return "Failed to store the file.";
+        }
+    }
+
+    // Updates the contents of a file with the one passed in by the client
+    private String updateFile(String fileName, Path upload) {
+        try {
+            commitUpload(fileName, upload);
+            return "File updated successfully.";
+        } catch (IOException e) {
+            ServerLog.error("Failed to update " + fileName, e);
+            return "Failed to update the file.";
+        }
+    }
+
+    /**
+     * Appends a received upload to a stored file, creating the file if needed. When the statistics of the file are
+     * known, only the appended bytes are counted and merged into them, so the cached counts are replaced instead of
+     * being dropped and the file is never rescanned. A compressed file gets the upload as new compressed blocks.
+     * @param fileName Filename including extension
+     * @param upload Temporary file returned by receiveUpload
+     * @return Message for the client
+     */
+    private String appendFile(String fileName, Path upload) {
+        if (upload == null) {
+            return "Failed to append to the file.";
+        }
+        Path filePath = programDirectory.toPath().resolve(fileName);
+        synchronized (fileLock(fileName)) {
+            try {
+                RunningTotals.Stamp before = Files.exists(filePath) ? RunningTotals.Stamp.of(filePath) : null;
+                FileStatistics previous = before != null
+                        ? RUNNING_TOTALS.current(fileName, clientCache.fileVersion(fileName), before)
+                        : new FileStatistics();
+                CONTENT_STORE.unshare(filePath); // Other names linked to the same content keep it unchanged
+
+                // An empty file takes the format new files are stored in, and is always compressed if the upload
+                // starts like a compressed file, so it can't be mistaken for one
+                boolean compressed = Files.exists(filePath) && Files.size(filePath) > 0
+                        ? BlockCompression.isCompressed(filePath)
+                        : COMPRESS_AT_REST || BlockCompression.isCompressed(upload);
+
+                // Copy the upload and count it in the same pass
+                FileStatistics appended = new FileStatistics();
+                long written = 0;
+                try (FileChannel source = FileChannel.open(upload, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    if (compressed) {
+                        written = appendCompressed(source, target, appended);
+                    } else {
+                        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                        while (source.read(buffer) != -1) {
+                            buffer.flip();
+                            appended.update(buffer.duplicate());
+                            while (buffer.hasRemaining()) {
+                                written += target.write(buffer);
+                            }
+                            buffer.clear();
+                        }
+                    }
+                }
+                RunningTotals.Stamp after = RunningTotals.Stamp.of(filePath);
+
+                // Remove elements associated with the previous version of the file, then cache the merged counts
+                clientCache.handleServerRemovalRequest(fileName);
+                DIRECTORY_INDEX.refresh(fileName);
+                if (previous != null && after.size() == (before == null ? 0 : before.size()) + written) {
+                    long version = clientCache.fileVersion(fileName);
+                    FileStatistics statistics = new FileStatistics();
+                    statistics.append(previous);
+                    statistics.append(appended);
+                    cacheStatistics(clientCache, fileName, statistics, version);
+                    RUNNING_TOTALS.record(fileName, statistics, version, after);
+                } else {
+                    // Not scanned yet, or also changed outside the server; the next count request scans the whole file
+                    RUNNING_TOTALS.remove(fileName);
+                }
+                return "File appended successfully.";
+            } catch (IOException e) {
+                ServerLog.error("Failed to append to " + fileName, e);
+                return "Failed to append to the file.";
+            }
+        }
+    }
+
+    // Adds an upload to a compressed file as new blocks, starting the file if it is empty, and counts it
+    private static long appendCompressed(FileChannel source, FileChannel target, FileStatistics appended) throws IOException {
+        Deflater deflater = new Deflater(BlockCompression.LEVEL);
+        try {
+            OutputStream file = Channels.newOutputStream(target);
+            long written = 0;
+            if (target.size() == 0) {
+                file.write(BlockCompression.MAGIC);
+                written = BlockCompression.MAGIC.length;
+            }
+            BlockCompression.BlockOutputStream out = new BlockCompression.BlockOutputStream(file, deflater);
+            ByteBuffer buffer = ByteBuffer.allocate(BlockCompression.BLOCK_SIZE);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                appended.update(buffer.duplicate());
+                out.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+            out.flush();
+            return written + out.written();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Lock held while a stored file is replaced, appended to or removed; names hashing to the same stripe share it
+    static Object fileLock(String fileName) {
+        int hash = fileName.hashCode();
+        hash ^= hash >>> 16;
+        return FILE_LOCKS[hash & (FILE_LOCKS.length - 1)];
+    }
+
+    // Deletes a temporary upload file
+    private static void deleteUpload(Path upload) {
+        try {
+            Files.deleteIfExists(upload);
+        } catch (IOException e) {
+            ServerLog.error("Failed to delete upload " + upload, e);
+        }
+    }
+
+    /**
+     * Replaces a stored file with a received upload in one atomic rename, so readers see either the old or the new
+     * content, never a partial file. The cache is invalidated only once the rename has happened; content stored
+     * before under any name gets its counts cached again right away.
+     * @param fileName Filename including extension
+     * @param upload Temporary file returned by receiveUpload
+     */
+    private void commitUpload(String fileName, Path upload) throws IOException {
+        if (upload == null) {
+            throw new IOException("No upload received for " + fileName);
+        }
+        synchronized (fileLock(fileName)) {
+            Path filePath = new File(programDirectory, fileName).toPath();
+            // Compress unless the content is already stored; an upload that looks compressed can't be stored raw
+            if (BlockCompression.isCompressed(upload) || COMPRESS_AT_REST && !CONTENT_STORE.contains(upload)) {
+                Path compressed = upload.resolveSibling("compress-" + UUID.randomUUID() + ".tmp");
+                try {
+                    BlockCompression.compressFile(upload, compressed, BlockCompression.LEVEL);
+                    Files.move(compressed, upload, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(compressed);
+                }
+            }
+            CONTENT_STORE.commit(upload, filePath);
+
+            // Remove elements associated with the previous version of the file from the cache
+            clientCache.handleServerRemovalRequest(fileName);
+            DIRECTORY_INDEX.refresh(fileName);
+            FileStatistics known = CONTENT_STORE.statistics(filePath);
+            if (known != null) {
+                long version = clientCache.fileVersion(fileName);
+                cacheStatistics(clientCache, fileName, known, version);
+                RUNNING_TOTALS.record(fileName, known, version, RunningTotals.Stamp.of(filePath));
+            } else {
+                RUNNING_TOTALS.remove(fileName);
+            }
+        }
+    }
+
+    // Removes the file passed in by the client
+    private String removeFile(String fileName) {
+        File fileToRemove = new File(programDirectory, fileName);
+        if (fileToRemove.exists()) {
+            boolean deleted;
+            synchronized (fileLock(fileName)) {
+                Object content = CONTENT_STORE.fileKey(fileToRemove.toPath());
+                deleted = fileToRemove.delete();
+                if (deleted) {
+                    CONTENT_STORE.release(content, fileName);
+                }
+
+                // Remove elements associated with the previous version of the file from the cache
+                if (deleted) {
+                    clientCache.handleServerDeletionRequest(fileName);
+                } else {
+                    clientCache.handleServerRemovalRequest(fileName);
+                }
+                RUNNING_TOTALS.remove(fileName);
+                DIRECTORY_INDEX.refresh(fileName);
+            }
+            if (deleted) {
+                return "File removed successfully.";
+            } else {
+                return "Failed to remove the file.";
+            }
+        } else {
+            return "File does not exist.";
+        }
+    }
+
+    /**
+     * Lists one page of the stored files with their size and modification time, from the directory index.
+     * @param arguments Empty, or ":prefix" or ":prefix:after" to filter by name prefix and continue after a name
+     * @return Listing, ending with the name to pass as after for the next page if there is one
+     */
+    private String getFileNames(String arguments) {
+        String[] parts = arguments.split(":", 3); // A leading ":" yields an empty first part
+        String prefix = parts.length > 1 ? parts[1] : "";
+        String after = parts.length > 2 ? parts[2] : "";
+        DirectoryIndex.Page page = DIRECTORY_INDEX.list(prefix, after, Math.max(1, LIST_PAGE_SIZE));
+        if (page.files().isEmpty()) {
+            return "No files found.";
+        }
+        StringBuilder fileNames = new StringBuilder();
+        for (Map.Entry<String, DirectoryIndex.FileInfo> file : page.files()) {
+            if (fileNames.length() > 0) {
+                fileNames.append(", ");
+            }
+            fileNames.append(file.getKey()).append(" (").append(file.getValue().size()).append(" bytes, modified ")
+                    .append(Instant.ofEpochMilli(file.getValue().modifiedTime())).append(")");
+        }
+        if (page.next() != null) {
+            fileNames.append("\nMore files follow, request get:").append(prefix).append(":").append(page.next());
+        }
+        return fileNames.toString();
+    }
+
+    /**
+     * Appends the contents of a file to a response. Content is sent straight from the off-heap cache tier on a hit,
+     * otherwise streamed from disk with transferTo; files up to server.readCacheMaxBytes are copied into the tier.
+     * @param response Response to append to
+     * @param fileName Filename including extension
+     * @param version File generation the cached content belongs to
+     */
+    private void appendFileContent(ServerResponse response, String fileName, long version) {
+        CacheKey key = new CacheKey(fileName, "read");
+        OffHeapCache.Block cachedContent = clientCache.handleServerBlockReadRequest(key);
+        if (cachedContent != null) {
+            response.append("\nCache hit for ").append(fileName).append(", read: ").appendBlock(cachedContent);
+            return;
+        }
+
+        response.append("\nContent of ").append(fileName).append(": ");
+        try {
+            Path filePath = Paths.get(programDirectory.getAbsolutePath(), fileName);
+            FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+            long size = channel.size();
+            if (!BlockCompression.isCompressed(channel)) {
+                if (size <= READ_CACHE_MAX_BYTES) { // The cache holds raw content
+                    clientCache.handleServerBlockWriteRequest(key, channel, size, version);
+                }
+                response.appendFile(channel);
+            } else {
+                // The running totals know where the blocks end unless the file changed since it was counted
+                RunningTotals.Stamp stamp = new RunningTotals.Stamp(size, Files.getLastModifiedTime(filePath).toMillis());
+                response.appendCompressedFile(channel, RUNNING_TOTALS.extent(fileName, version, stamp));
+            }
+        } catch (IOException e) {
+            ServerLog.error("Failed to read " + fileName, e);
+            response.append("Failed to read file.");
+        }
+    }
+
+    // Gets the totals of lines/words/characters and caches them if they haven't been cached already
+    private String getSystemTotals(String fileName) {
+        StringBuilder response = new StringBuilder();
+        FileStatistics statistics = null; // Scanned at most once, on the first count missing from the cache
+
+        for (String countOption : COUNT_OPTIONS) {
+            CacheKey key = new CacheKey(fileName, countOption);
+            // Once the file was scanned the remaining counts come from the scan, not from the cache it just filled
+            String cachedValue = statistics == null ? clientCache.handleServerReadRequest(key) : null;
+
+            if (cachedValue == null) {
+                if (statistics == null) {
+                    statistics = loadStatistics(fileName);
+                }
+                response.append("\n").append(countOption).append(" count for ").append(fileName).append(": ").append(statistics.count(countOption));
+            } else {
+                response.append("\nCache hit for ").append(key).append(": ").append(cachedValue);
+            }
+        }
+        return response.toString();
+    }
+}
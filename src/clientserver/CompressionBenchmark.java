@@ -0,0 +1,91 @@
+package clientserver;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+
+/**
+ * CompressionBenchmark shows what BlockCompression costs and saves at each deflate level: compression ratio,
+ * compression, decompression and counting throughput with the CPU time they take, and the effective rate at which
+ * a link of the given bandwidth delivers the raw content when compression and sending overlap. Counting the raw
+ * file is the baseline. It generates text from a skewed vocabulary and reports the best of several runs.
+ * Usage: java clientserver.CompressionBenchmark [megabytes] [runs] [linkMegabitsPerSecond]
+ */
+public class CompressionBenchmark {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        double linkMegabits = args.length > 2 ? Double.parseDouble(args[2]) : 1000;
+
+        Path raw = Files.createTempFile("compression-benchmark", ".txt");
+        Path compressed = Files.createTempFile("compression-benchmark", ".dzb");
+        try {
+            BenchmarkText.writeWords(raw, megabytes * 1024L * 1024);
+            long rawBytes = Files.size(raw);
+            System.out.println("File size: " + megabytes + " MB, best of " + runs + " runs, link " + linkMegabits + " Mbit/s");
+            System.out.printf("%-10s %6s %14s %14s %14s %12s%n", "level", "ratio", "compress", "decompress", "count", "over link");
+
+            Result count = measure(runs, () -> FileStatistics.scan(raw));
+            double linkBytesPerSecond = linkMegabits * 1e6 / 8;
+            System.out.printf("%-10s %6.2f %14s %14s %14s %9.0f MB/s%n", "raw", 1.0, "-", "-", count.format(rawBytes), linkBytesPerSecond / 1024 / 1024);
+
+            for (int level : new int[] {Deflater.BEST_SPEED, 3, 6, Deflater.BEST_COMPRESSION}) {
+                Result compress = measure(runs, () -> {
+                    BlockCompression.compressFile(raw, compressed, level);
+                    return null;
+                });
+                long compressedBytes = Files.size(compressed);
+                Result decompress = measure(runs, () -> {
+                    try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.READ)) {
+                        BlockCompression.decompress(channel, BlockCompression.extent(channel).contentLength(), OutputStream.nullOutputStream());
+                    }
+                    return null;
+                });
+                Result counted = measure(runs, () -> BlockCompression.count(compressed));
+
+                // Compressing and sending overlap, so the slower of the two limits the rate of raw content delivered
+                double sendSeconds = compressedBytes / linkBytesPerSecond;
+                double seconds = Math.max(sendSeconds, compress.nanos() / 1e9);
+                System.out.printf("%-10s %6.2f %14s %14s %14s %9.0f MB/s%n", String.valueOf(level),
+                        (double) rawBytes / compressedBytes, compress.format(rawBytes), decompress.format(rawBytes), counted.format(rawBytes),
+                        rawBytes / seconds / 1024 / 1024);
+            }
+        } finally {
+            Files.delete(raw);
+            Files.delete(compressed);
+        }
+    }
+
+    // Runs a task repeatedly and keeps its best wall-clock and CPU time
+    private static Result measure(int runs, Task task) throws IOException {
+        task.run(); // Warm up and page the file in
+        long best = Long.MAX_VALUE;
+        long bestCpu = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+            bestCpu = Math.min(bestCpu, threads.getCurrentThreadCpuTime() - cpuStart);
+        }
+        return new Result(best, bestCpu);
+    }
+
+    private interface Task {
+        Object run() throws IOException;
+    }
+
+    private record Result(long nanos, long cpuNanos) {
+        // Throughput of raw content and the share of the wall-clock time spent on the CPU
+        private String format(long rawBytes) {
+            return String.format("%5.0f MB/s %3.0f%%", rawBytes / (nanos / 1e9) / 1024 / 1024, 100.0 * cpuNanos / nanos);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package clientserver;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionBenchmark measures how many connections per second a running Server completes.
+ * Each connection sends a single "exit" request, which the server answers without touching the cache or disk,
+ * so the result reflects the connection engine rather than the request logic.
+ * Usage: java clientserver.ConnectionBenchmark [host] [port] [clientThreads] [seconds]
+ */
+public class ConnectionBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int clientThreads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(clientThreads);
+
+        for (int i = 0; i < clientThreads; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    try (Socket socket = new Socket(host, port)) {
+                        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                        out.println("benchmark,exit");
+                        while (in.readLine() != null) {
+                            // Drain the response until the server closes the connection
+                        }
+                        completed.incrementAndGet();
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+            thread.start();
+        }
+        done.await();
+
+        System.out.println("Client threads: " + clientThreads + ", duration: " + seconds + "s");
+        System.out.println("Completed connections: " + completed.get() + ", failed: " + failed.get());
+        System.out.println("Connections per second: " + completed.get() / seconds);
+    }
+}
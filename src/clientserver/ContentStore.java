@@ -0,0 +1,380 @@
+package clientserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ContentStore deduplicates stored files by content. Every upload is hashed with SHA-256 while it is received, and
+ * its bytes are kept once as a blob named by the digest in the .blobs directory of the storage directory. A stored
+ * name is a hard link to its blob, so reads, transferTo and the directory index keep working on plain paths while
+ * identical content stored under any number of names takes the disk space of one copy.
+ *
+ * Statistics are also kept per digest: storing, updating or renaming to content that was counted before fills the
+ * cache for the new name without a scan. Because all names of a blob share one inode, a file is unshared (copied)
+ * before the server appends to it, and statistics of a blob are only trusted while its size and modification time
+ * are the ones recorded when it was created. Blobs are deleted when their last name is removed or replaced.
+ *
+ * An edit made outside the server to one name changes every name linked to the same inode, so the store also
+ * keeps the names of each blob. The storage watcher reports such edits through changed, which re-digests the
+ * edited content and returns the other names so their cached values are invalidated too. Because that edit still
+ * changes the content of every such name, deduplication is off unless server.dedup=true; by default uploads are
+ * stored as independent files.
+ */
+public final class ContentStore {
+    private static final String BLOB_DIRECTORY = ".blobs";
+    private static final String UPLOAD_PREFIX = "upload-";
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("server.dedup", "false"));
+
+    private final Path blobDirectory;
+    private final Path incomingDirectory;
+    private final Map<Object, String> digestsByFileKey = new ConcurrentHashMap<>(); // Inode of each blob -> digest
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>(); // Digest -> blob as created
+    private final Map<String, FileStatistics> statistics = new ConcurrentHashMap<>(); // Digest -> counts of its content
+    private final Map<Object, Set<String>> namesByFileKey = new HashMap<>(); // Inode -> stored names linked to it, guarded by this
+    private final Map<String, Object> fileKeysByName = new HashMap<>(); // Stored name -> inode it links to, guarded by this
+
+    /**
+     * Constructor indexes the existing blobs and the stored names linked to them.
+     * @param directory Storage directory
+     * @param incomingDirectory Directory for temporary files, on the same file system
+     */
+    public ContentStore(Path directory, Path incomingDirectory) {
+        this.blobDirectory = directory.resolve(BLOB_DIRECTORY);
+        this.incomingDirectory = incomingDirectory;
+        if (!ENABLED || !Files.isDirectory(blobDirectory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(blobDirectory)) {
+            for (Path blob : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(blob, BasicFileAttributes.class);
+                remember(blob.getFileName().toString(), attributes);
+            }
+        } catch (IOException e) {
+            ServerLog.error("Failed to index " + blobDirectory, e);
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Object key = fileKey(file);
+                if (key != null && digestsByFileKey.containsKey(key) && !file.getFileName().toString().startsWith(".")) {
+                    link(key, file.getFileName().toString());
+                }
+            }
+        } catch (IOException e) {
+            ServerLog.error("Failed to index the names linked to " + blobDirectory, e);
+        }
+    }
+
+    // Message digest used to name content
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every Java platform", e);
+        }
+    }
+
+    /**
+     * Names a received upload after its digest, so the digest travels with the file until it is committed.
+     * @param upload Temporary file holding the upload
+     * @param digest SHA-256 of its bytes
+     * @return The renamed upload
+     */
+    public Path nameByDigest(Path upload, byte[] digest) throws IOException {
+        String name = UPLOAD_PREFIX + HexFormat.of().formatHex(digest) + "-" + UUID.randomUUID() + ".tmp";
+        return Files.move(upload, upload.resolveSibling(name), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Tells whether the content of an upload is already stored, in which case commit won't keep the upload itself.
+     * @param upload Upload named by nameByDigest
+     * @return True if an unchanged blob with its digest exists
+     */
+    public boolean contains(Path upload) {
+        String digest = digestOfUpload(upload);
+        return ENABLED && digest != null && isIntact(digest, blobDirectory.resolve(digest));
+    }
+
+    /**
+     * Replaces a stored file with an upload. Content already stored is linked instead of written again.
+     * @param upload Upload named by nameByDigest
+     * @param target Stored file to create or replace
+     */
+    public void commit(Path upload, Path target) throws IOException {
+        String digest = digestOfUpload(upload);
+        Object previousKey = fileKey(target);
+        String name = target.getFileName().toString();
+        if (!ENABLED || digest == null) {
+            Files.move(upload, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            release(previousKey, name);
+            return;
+        }
+        Path link = incomingDirectory.resolve("link-" + UUID.randomUUID() + ".tmp");
+        try {
+            synchronized (this) {
+                Path blob = blobDirectory.resolve(digest);
+                if (isIntact(digest, blob)) {
+                    Files.delete(upload); // Duplicate content, nothing new to keep
+                } else {
+                    // A changed blob is replaced; the names still linked to its old inode no longer have this digest
+                    Object staleKey = fileKey(blob);
+                    if (staleKey != null) {
+                        digestsByFileKey.remove(staleKey, digest);
+                    }
+                    Files.createDirectories(blobDirectory);
+                    Files.move(upload, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    statistics.remove(digest);
+                    remember(digest, Files.readAttributes(blob, BasicFileAttributes.class));
+                }
+                Files.createLink(link, blob);
+            }
+        } catch (UnsupportedOperationException e) {
+            // The file system has no hard links; keep this upload as an independent file
+            Files.move(upload, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            release(previousKey, name);
+            return;
+        }
+        Files.move(link, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Object key = fileKey(target);
+        if (key != null) {
+            synchronized (this) {
+                link(key, name);
+            }
+        }
+        if (!Objects.equals(key, previousKey)) {
+            release(previousKey, name);
+        }
+    }
+
+    /**
+     * Gives a stored file its own copy of its content, so it can be modified in place without changing other names.
+     * @param file Stored file
+     */
+    public void unshare(Path file) throws IOException {
+        Object key = fileKey(file);
+        synchronized (this) {
+            if (key == null || !digestsByFileKey.containsKey(key) && namesByFileKey.getOrDefault(key, Set.of()).size() < 2) {
+                return; // Already an independent file
+            }
+        }
+        Path copy = incomingDirectory.resolve("copy-" + UUID.randomUUID() + ".tmp");
+        Files.createDirectories(incomingDirectory);
+        Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+        Files.move(copy, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        release(key, file.getFileName().toString());
+    }
+
+    /**
+     * Updates the store after a stored file was changed, created or removed outside the server. Content edited in
+     * place is re-digested, so its blob is named and counted by what it now holds; a name that was replaced or
+     * removed leaves the names of its old content.
+     * @param file Stored file that changed
+     * @return The other names whose content changed along with it, because they link to the same inode
+     */
+    public Set<String> changed(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        Object key = fileKey(file);
+        Object linkedKey;
+        synchronized (this) {
+            linkedKey = fileKeysByName.get(name);
+        }
+        if (linkedKey == null) {
+            return Set.of(); // Not linked to any blob
+        }
+        if (!linkedKey.equals(key)) {
+            release(linkedKey, name); // Replaced or removed; the content of the other names is untouched
+            return Set.of();
+        }
+
+        // Edited in place: every name of the inode now holds the new content
+        String digest = digestsByFileKey.get(key);
+        if (digest != null && !isIntact(digest, blobDirectory.resolve(digest))) {
+            BasicFileAttributes before = Files.readAttributes(file, BasicFileAttributes.class);
+            String newDigest = digestOf(file);
+            BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+            rename(key, digest, before.size() == after.size() && before.lastModifiedTime().equals(after.lastModifiedTime()) ? newDigest : null);
+        }
+        synchronized (this) {
+            Set<String> others = new HashSet<>(namesByFileKey.getOrDefault(key, Set.of()));
+            others.remove(name);
+            return others;
+        }
+    }
+
+    /**
+     * Looks up counts of a stored file's content made under any name.
+     * @param file Stored file
+     * @return The counts, or null if its content wasn't counted or may have changed
+     */
+    public FileStatistics statistics(Path file) throws IOException {
+        String digest = intactDigestOf(file);
+        return digest == null ? null : statistics.get(digest);
+    }
+
+    /**
+     * Remembers counts of a stored file for every name sharing its content.
+     * @param file Stored file
+     * @param counted Counts covering the whole file
+     * @param stamp Size and modification time of the file when it was counted, unchanged when the count ended
+     */
+    public void recordStatistics(Path file, FileStatistics counted, RunningTotals.Stamp stamp) throws IOException {
+        String digest = intactDigestOf(file);
+        Blob blob = digest == null ? null : blobs.get(digest);
+        if (blob != null && blob.size() == stamp.size() && blob.modifiedTime() == stamp.modifiedTime()) {
+            statistics.put(digest, counted); // Counted from the content the digest names
+        }
+    }
+
+    /**
+     * Identifies the content of a stored file, to be passed to release once the name is removed.
+     * @param file Stored file
+     * @return Its file key, or null if it doesn't exist or the file system has none
+     */
+    public Object fileKey(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forgets a removed or replaced name and deletes the blob it linked to if no other name links to it.
+     * @param fileKey Key returned by fileKey before the name went away
+     * @param name Stored name that no longer links to it
+     */
+    public synchronized void release(Object fileKey, String name) {
+        if (fileKey == null) {
+            return;
+        }
+        if (fileKey.equals(fileKeysByName.get(name))) {
+            fileKeysByName.remove(name);
+            Set<String> names = namesByFileKey.get(fileKey);
+            names.remove(name);
+            if (names.isEmpty()) {
+                namesByFileKey.remove(fileKey);
+            }
+        }
+        String digest = digestsByFileKey.get(fileKey);
+        if (digest == null) {
+            return;
+        }
+        Path blob = blobDirectory.resolve(digest);
+        try {
+            Object links = Files.getAttribute(blob, "unix:nlink");
+            if (links instanceof Integer && (Integer) links <= 1) {
+                Files.deleteIfExists(blob);
+                digestsByFileKey.remove(fileKey);
+                blobs.remove(digest);
+                statistics.remove(digest);
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Link counts aren't available here; the blob is kept
+        } catch (IOException e) {
+            ServerLog.error("Failed to release blob " + digest, e);
+        }
+    }
+
+    // Digest of a stored file if it links to a blob that is unchanged since it was created
+    private String intactDigestOf(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String digest = attributes.fileKey() == null ? null : digestsByFileKey.get(attributes.fileKey());
+        if (digest == null) {
+            return null;
+        }
+        Blob blob = blobs.get(digest);
+        return blob != null && blob.matches(attributes) ? digest : null;
+    }
+
+    // Whether a blob exists with the content its digest names; a blob modified in place through one of its names doesn't
+    private boolean isIntact(String digest, Path blob) {
+        Blob known = blobs.get(digest);
+        try {
+            return known != null && known.matches(Files.readAttributes(blob, BasicFileAttributes.class));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Records that a stored name links to an inode; the caller holds the lock of this store
+    private void link(Object fileKey, String name) {
+        Object previous = fileKeysByName.put(name, fileKey);
+        if (previous != null && !previous.equals(fileKey)) {
+            Set<String> names = namesByFileKey.get(previous);
+            names.remove(name);
+            if (names.isEmpty()) {
+                namesByFileKey.remove(previous);
+            }
+        }
+        namesByFileKey.computeIfAbsent(fileKey, unused -> new HashSet<>()).add(name);
+    }
+
+    // Moves an edited blob to its new digest, or out of the store if the digest is unknown or already taken
+    private synchronized void rename(Object fileKey, String digest, String newDigest) throws IOException {
+        if (!digest.equals(digestsByFileKey.get(fileKey))) {
+            return; // Renamed or released meanwhile
+        }
+        Path blob = blobDirectory.resolve(digest);
+        digestsByFileKey.remove(fileKey);
+        blobs.remove(digest);
+        statistics.remove(digest);
+        if (newDigest != null && !Files.exists(blobDirectory.resolve(newDigest))) {
+            Path renamed = Files.move(blob, blobDirectory.resolve(newDigest), StandardCopyOption.ATOMIC_MOVE);
+            statistics.remove(newDigest);
+            remember(newDigest, Files.readAttributes(renamed, BasicFileAttributes.class));
+        } else {
+            Files.deleteIfExists(blob); // The names keep sharing the inode, and unshare still separates them
+        }
+    }
+
+    // SHA-256 of a stored file's content, decompressed if it is stored compressed, as an upload would be hashed
+    private static String digestOf(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            if (BlockCompression.isCompressed(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    BlockCompression.decompress(channel, -1, out);
+                }
+            } else {
+                try (InputStream in = Files.newInputStream(file)) {
+                    in.transferTo(out);
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void remember(String digest, BasicFileAttributes attributes) {
+        if (attributes.fileKey() != null) {
+            digestsByFileKey.put(attributes.fileKey(), digest);
+        }
+        blobs.put(digest, new Blob(attributes.size(), attributes.lastModifiedTime().toMillis()));
+    }
+
+    // Digest encoded in an upload's name by nameByDigest, or null for other files
+    private static String digestOfUpload(Path upload) {
+        String name = upload.getFileName().toString();
+        int end = name.indexOf('-', UPLOAD_PREFIX.length());
+        return name.startsWith(UPLOAD_PREFIX) && end == UPLOAD_PREFIX.length() + 64 ? name.substring(UPLOAD_PREFIX.length(), end) : null;
+    }
+
+    private record Blob(long size, long modifiedTime) {
+        private boolean matches(BasicFileAttributes attributes) {
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modifiedTime;
+        }
+    }
+}
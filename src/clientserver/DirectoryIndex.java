@@ -0,0 +1,99 @@
+package clientserver;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * DirectoryIndex is an in-memory listing of the stored files with their size and modification time, sorted by name.
+ * The directory is read once at startup; after that, changes made through the server and changes reported by the
+ * storage watcher update single entries, so a listing never touches the filesystem and costs O(page size) no matter
+ * how many files are stored.
+ */
+public final class DirectoryIndex {
+    private final Path directory;
+    private final ConcurrentSkipListMap<String, FileInfo> files = new ConcurrentSkipListMap<>();
+
+    /**
+     * Constructor reads the directory.
+     * @param directory Storage directory
+     */
+    public DirectoryIndex(Path directory) {
+        this.directory = directory;
+        rebuild();
+    }
+
+    /**
+     * Reads the whole directory again, for when changes may have been missed.
+     */
+    public void rebuild() {
+        Set<String> seen = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                seen.add(fileName);
+                refresh(fileName);
+            }
+        } catch (IOException e) {
+            ServerLog.error("Failed to read the storage directory", e);
+            return; // Keep the current entries rather than dropping everything
+        }
+        files.keySet().retainAll(seen);
+    }
+
+    /**
+     * Updates the entry of one file from the filesystem, removing it if the file no longer exists.
+     * @param fileName Filename including extension
+     */
+    public void refresh(String fileName) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(directory.resolve(fileName), BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+                files.put(fileName, new FileInfo(attributes.size(), attributes.lastModifiedTime().toMillis()));
+            } else {
+                files.remove(fileName);
+            }
+        } catch (NoSuchFileException e) {
+            files.remove(fileName);
+        } catch (IOException e) {
+            ServerLog.error("Failed to index " + fileName, e);
+        }
+    }
+
+    /**
+     * Lists one page of files in name order.
+     * @param prefix Only names starting with this are listed, empty for all
+     * @param after Name the previous page ended with, or empty to start from the beginning
+     * @param limit Maximum number of files in the page
+     * @return The page and the name to continue after, or null if it is the last page
+     */
+    public Page list(String prefix, String after, int limit) {
+        Map<String, FileInfo> tail = after.compareTo(prefix) >= 0 ? files.tailMap(after, false) : files.tailMap(prefix, true);
+        List<Map.Entry<String, FileInfo>> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Map.Entry<String, FileInfo> entry : tail.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break; // Names with the prefix are contiguous, none follow
+            }
+            if (page.size() == limit) {
+                return new Page(page, page.get(page.size() - 1).getKey());
+            }
+            page.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        return new Page(page, null);
+    }
+
+    public record FileInfo(long size, long modifiedTime) {
+    }
+
+    public record Page(List<Map.Entry<String, FileInfo>> files, String next) {
+    }
+}
@@ -0,0 +1,40 @@
+package clientserver;
+
+/**
+ * EvictionPolicy decides which entry of a cache segment is evicted next. CacheService calls it while holding the
+ * segment lock, so implementations don't need to be thread-safe.
+ * @param <K> Key type for the cache
+ */
+public interface EvictionPolicy<K> {
+    // Records a read hit on an existing key
+    void recordAccess(K key);
+
+    // Records that a new key was inserted
+    void recordInsert(K key);
+
+    // Records that a key left the segment, through eviction or explicit removal
+    void recordRemoval(K key);
+
+    /**
+     * Picks the key to evict next. The key is not forgotten until recordRemoval is called for it.
+     * @return Key to evict, or null if the policy tracks no keys
+     */
+    K victim();
+
+    /**
+     * Creates a policy by name.
+     * @param name "lru" or "tinylfu"
+     * @param <K> Key type for the cache
+     * @return A new policy instance
+     */
+    static <K> EvictionPolicy<K> named(String name) {
+        switch (name) {
+            case "lru":
+                return new LruPolicy<>();
+            case "tinylfu":
+                return new TinyLfuPolicy<>();
+            default:
+                throw new IllegalArgumentException("Unknown eviction policy: " + name + ". Supported policies: lru, tinylfu");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package clientserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FileStatistics counts lines, words and characters of UTF-8 text in a single streaming pass.
+ * Bytes are fed in chunks of any size and the counter keeps the little state needed across chunk boundaries,
+ * so memory use is a fixed buffer no matter how large the file is. Statistics of adjacent byte ranges can be
+ * combined, which lets ParallelStatistics count ranges of one file independently.
+ *
+ * Counts follow the previous implementation: lines as Files.lines reports them (\n, \r and \r\n terminate a line),
+ * words as runs of non-whitespace characters (whitespace as in the regex \s) and characters as UTF-16 chars.
+ */
+public class FileStatistics {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Byte classes, looked up once per byte instead of comparing against each special value
+    private static final int WHITESPACE = 1;
+    private static final int LINE_FEED = 2;
+    private static final int CARRIAGE_RETURN = 4;
+    private static final int CHARACTERS_SHIFT = 3; // Upper bits hold the UTF-16 chars a byte starts (0, 1 or 2)
+    private static final int[] BYTE_TYPES = new int[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int type = isWhitespace((byte) b) ? WHITESPACE : 0;
+            if (b == '\n') {
+                type |= LINE_FEED;
+            } else if (b == '\r') {
+                type |= CARRIAGE_RETURN;
+            }
+            int characters = (b & 0xC0) == 0x80 ? 0 : (b & 0xF8) == 0xF0 ? 2 : 1;
+            BYTE_TYPES[b] = type | characters << CHARACTERS_SHIFT;
+        }
+    }
+
+    private long bytes;
+    private long lines; // Line terminators seen so far
+    private long words;
+    private long characters;
+    private boolean lineOpen; // Content seen since the last line terminator
+    private boolean pendingCarriageReturn; // Last byte was \r, so a following \n belongs to the same terminator
+    private boolean inWord; // Last byte was part of a word
+    private boolean startsWithLineFeed; // First byte was \n, which may complete a \r\n split from the previous range
+    private boolean startsInWord; // First byte was part of a word, which may continue a word of the previous range
+
+    /**
+     * Scans a file once and returns its statistics.
+     * @param path File to scan
+     * @return Statistics of the whole file
+     */
+    public static FileStatistics scan(Path path) throws IOException {
+        FileStatistics statistics = new FileStatistics();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, channel.size())));
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                statistics.update(buffer);
+                buffer.clear();
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Counts the remaining bytes of a buffer, continuing from the state left by previous calls.
+     * @param buffer Next chunk of the text; it is fully consumed
+     */
+    public void update(ByteBuffer buffer) {
+        int end = buffer.limit();
+        if (bytes == 0 && buffer.hasRemaining()) {
+            byte first = buffer.get(buffer.position());
+            startsWithLineFeed = first == '\n';
+            startsInWord = !isWhitespace(first);
+        }
+        for (int i = buffer.position(); i < end; i++) {
+            int type = BYTE_TYPES[buffer.get(i) & 0xFF];
+
+            if ((type & LINE_FEED) != 0) {
+                if (!pendingCarriageReturn) {
+                    lines++;
+                }
+                pendingCarriageReturn = false;
+                lineOpen = false;
+            } else if ((type & CARRIAGE_RETURN) != 0) {
+                lines++;
+                pendingCarriageReturn = true;
+                lineOpen = false;
+            } else {
+                pendingCarriageReturn = false;
+                lineOpen = true;
+            }
+
+            if ((type & WHITESPACE) != 0) {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                words++;
+            }
+
+            // Every UTF-8 byte except a continuation byte starts a character; 4-byte sequences are surrogate pairs
+            characters += type >>> CHARACTERS_SHIFT;
+        }
+        bytes += end - buffer.position();
+        buffer.position(end);
+    }
+
+    /**
+     * Adds the statistics of the byte range that directly follows the one counted so far. A line terminator or word
+     * split between the two ranges is counted once; characters need no fixing because only UTF-8 lead bytes count.
+     * @param next Statistics of the following range
+     */
+    public void append(FileStatistics next) {
+        if (next.bytes == 0) {
+            return;
+        }
+        if (bytes == 0) {
+            startsWithLineFeed = next.startsWithLineFeed;
+            startsInWord = next.startsInWord;
+        }
+        lines += next.lines - (pendingCarriageReturn && next.startsWithLineFeed ? 1 : 0);
+        words += next.words - (inWord && next.startsInWord ? 1 : 0);
+        characters += next.characters;
+        bytes += next.bytes;
+        lineOpen = next.lineOpen;
+        pendingCarriageReturn = next.pendingCarriageReturn;
+        inWord = next.inWord;
+    }
+
+    // Same characters as the regex class \s
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    // Number of lines, counting a last line without terminator
+    public long lines() {
+        return lines + (lineOpen ? 1 : 0);
+    }
+
+    // Number of whitespace-separated words
+    public long words() {
+        return words;
+    }
+
+    // Number of UTF-16 characters
+    public long characters() {
+        return characters;
+    }
+
+    // Number of bytes counted
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the count for a count option.
+     * @param countOption lines, words or characters
+     * @return The matching count
+     */
+    public long count(String countOption) {
+        switch (countOption) {
+            case "lines":
+                return lines();
+            case "words":
+                return words();
+            case "characters":
+                return characters();
+            default:
+                throw new IllegalArgumentException("Invalid count option: " + countOption);
+        }
+    }
+}
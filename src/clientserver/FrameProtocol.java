@@ -0,0 +1,172 @@
+package clientserver;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * FrameProtocol defines version 2 of the client-server protocol: a binary, length-framed format that lets one
+ * connection carry many pipelined requests whose responses may come back in any order.
+ *
+ * A client opts in by sending the text line "PROTOCOL 2"; the server answers with "PROTOCOL n", n being the
+ * highest version both sides support. Clients that never send the line keep using the comma-separated text protocol.
+ * A client that can decompress adds " deflate" to its line; a server that agrees (server.wireCompression, default
+ * true) adds it to its answer, and from then on payloads and response bodies in both directions are sent in the
+ * BlockCompression block format. Their lengths in the frame headers remain the uncompressed lengths.
+ *
+ * Request frame:  int requestId, byte opcode, UTF fileName, UTF option, UTF countOption ("" for none),
+ *                 long payloadLength, payload bytes
+ * Response frame: int requestId, byte status, long length, UTF-8 response bytes
+ */
+public final class FrameProtocol {
+    public static final String HELLO = "PROTOCOL";
+    public static final int VERSION = 2; // Highest version this build speaks
+    public static final String DEFLATE = "deflate"; // Hello extension for compressed payloads and bodies
+
+    public static final byte OP_REQUEST = 1; // Carries a file request
+    public static final byte OP_CLOSE = 2; // Ends the session once the in-flight requests are answered
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final byte STATUS_PARTIAL = 2; // Part of a response; more frames with the same request id follow
+
+    private static final Pattern HELLO_LINE = Pattern.compile(HELLO + " \\d{1,9}( " + DEFLATE + ")?");
+
+    private FrameProtocol() {
+    }
+
+    /**
+     * Tells whether a client's first line is a hello. Anything else, even if it starts with the word PROTOCOL,
+     * is a text protocol request.
+     * @param line First line sent by the client
+     * @return True if the line is exactly "PROTOCOL n" or "PROTOCOL n deflate"
+     */
+    public static boolean isHello(String line) {
+        return HELLO_LINE.matcher(line).matches();
+    }
+
+    /**
+     * Picks the version to use for a "PROTOCOL n" hello line.
+     * @param hello Hello line sent by the client
+     * @return Highest version supported by both sides, 1 meaning the text protocol
+     */
+    public static int negotiate(String hello) {
+        try {
+            int requested = Integer.parseInt(hello.substring(HELLO.length()).trim().split(" ")[0]);
+            return Math.max(1, Math.min(requested, VERSION));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Tells whether a hello line asks for, or a server's answer agrees to, compressed frames.
+     * @param hello Hello line
+     * @return True if it names the deflate extension
+     */
+    public static boolean offersDeflate(String hello) {
+        String[] words = hello.trim().split(" ");
+        for (int i = 2; i < words.length; i++) {
+            if (words[i].equals(DEFLATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds a hello line.
+     * @param version Protocol version
+     * @param deflate Whether to ask for, or agree to, compressed frames
+     * @return The line, with its terminator
+     */
+    public static String hello(int version, boolean deflate) {
+        return HELLO + " " + version + (deflate ? " " + DEFLATE : "") + "\n";
+    }
+
+    /**
+     * Reads one newline-terminated line of UTF-8 text without reading past it, so binary data that follows
+     * (a payload or the first frame) stays in the stream.
+     * @param in Stream to read from
+     * @return The line without its terminator, or null at end of stream
+     */
+    public static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * Writes the header of a request frame. The caller writes payloadLength bytes of payload right after it.
+     * @param out Stream to write to
+     * @param requestId Identifier echoed back in the response
+     * @param opcode Frame opcode
+     * @param fileName File name without extension
+     * @param option Requested option
+     * @param countOption Requested count option, or null if none
+     * @param payloadLength Number of payload bytes following the header
+     */
+    public static void writeRequestHeader(DataOutputStream out, int requestId, byte opcode, String fileName, String option, String countOption, long payloadLength) throws IOException {
+        out.writeInt(requestId);
+        out.writeByte(opcode);
+        out.writeUTF(fileName);
+        out.writeUTF(option);
+        out.writeUTF(countOption == null ? "" : countOption);
+        out.writeLong(payloadLength);
+    }
+
+    /**
+     * Reads the header of a request frame, leaving the stream positioned at the payload.
+     * @param in Stream to read from
+     * @return The request header, or null if the connection closed between frames
+     */
+    public static RequestHeader readRequestHeader(DataInputStream in) throws IOException {
+        int requestId;
+        try {
+            requestId = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte opcode = in.readByte();
+        String fileName = in.readUTF();
+        String option = in.readUTF();
+        String countOption = in.readUTF();
+        long payloadLength = in.readLong();
+        return new RequestHeader(requestId, opcode, fileName, option, countOption.isEmpty() ? null : countOption, payloadLength);
+    }
+
+    /**
+     * Writes the header of a response frame. The caller writes length bytes of body right after it.
+     * @param out Stream to write to
+     * @param requestId Identifier of the request being answered
+     * @param status STATUS_OK, STATUS_ERROR or STATUS_PARTIAL
+     * @param length Number of body bytes following the header
+     */
+    public static void writeResponseHeader(DataOutputStream out, int requestId, byte status, long length) throws IOException {
+        out.writeInt(requestId);
+        out.writeByte(status);
+        out.writeLong(length);
+    }
+
+    /**
+     * Reads the header of a response frame, leaving the stream positioned at the body.
+     * @param in Stream to read from
+     * @return The response header
+     */
+    public static ResponseHeader readResponseHeader(DataInputStream in) throws IOException {
+        return new ResponseHeader(in.readInt(), in.readByte(), in.readLong());
+    }
+
+    public record RequestHeader(int requestId, byte opcode, String fileName, String option, String countOption, long payloadLength) {
+    }
+
+    public record ResponseHeader(int requestId, byte status, long length) {
+    }
+}
@@ -0,0 +1,127 @@
+package clientserver;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * FramedSession serves one persistent connection speaking FrameProtocol version 2.
+ * Frames are read sequentially, but each request runs on the request executor, so responses are written as soon
+ * as they are ready and may overtake earlier requests. Clients match them up by request id.
+ * When deflate was negotiated, payloads are decompressed as they are read and response bodies compressed as they
+ * are written, with one Inflater for the reader loop and one Deflater shared by the serialized response writes.
+ */
+public class FramedSession implements Runnable {
+    private static final int MAX_IN_FLIGHT = 32; // Pipelined requests a single connection may have outstanding
+
+    private final Socket clientSocket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ClientHandler handler;
+    private final ExecutorService requestExecutor;
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final Inflater inflater; // Null unless deflate was negotiated
+    private final Deflater deflater;
+    private final BlockCompression.BlockOutputStream compressedOut;
+
+    /**
+     * Constructor for FramedSession.
+     * @param clientSocket Socket of the negotiated connection
+     * @param in Connection input, positioned right after the hello line
+     * @param handler Handler that processes the individual requests
+     * @param requestExecutor Executor running the pipelined requests
+     * @param deflate Whether payloads and bodies are compressed
+     */
+    public FramedSession(Socket clientSocket, InputStream in, ClientHandler handler, ExecutorService requestExecutor, boolean deflate) throws IOException {
+        this.clientSocket = clientSocket;
+        this.in = new DataInputStream(in);
+        this.out = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+        this.handler = handler;
+        this.requestExecutor = requestExecutor;
+        this.inflater = deflate ? new Inflater() : null;
+        this.deflater = deflate ? new Deflater(BlockCompression.LEVEL) : null;
+        this.compressedOut = deflate ? new BlockCompression.BlockOutputStream(out, deflater) : null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            FrameProtocol.RequestHeader header;
+            while ((header = FrameProtocol.readRequestHeader(in)) != null && header.opcode() != FrameProtocol.OP_CLOSE) {
+                // The payload must be consumed before the next frame can be read; uploads stream into a temporary file
+                InputStream payload = inflater != null ? new BlockCompression.BlockInputStream(in, header.payloadLength(), inflater) : in;
+                if (header.opcode() != FrameProtocol.OP_REQUEST) {
+                    payload.skipNBytes(header.payloadLength());
+                    ClientHandler.METRICS.addBytesIn(header.payloadLength());
+                    writeResponse(header.requestId(), FrameProtocol.STATUS_ERROR, new ServerResponse("Invalid frame."));
+                    continue;
+                }
+                Path upload = null;
+                if (ClientHandler.isUpload(header.option())) {
+                    upload = handler.receiveUpload(payload, header.payloadLength());
+                } else {
+                    payload.skipNBytes(header.payloadLength());
+                    ClientHandler.METRICS.addBytesIn(header.payloadLength());
+                }
+                inFlight.acquire();
+                dispatch(header, upload);
+            }
+            inFlight.acquire(MAX_IN_FLIGHT); // Wait for the outstanding responses before closing
+        } catch (IOException | InterruptedException e) {
+            ServerLog.error("Framed session failed", e);
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                ServerLog.error("Failed to close a framed session", e);
+            }
+            if (inflater != null) {
+                inflater.end();
+                synchronized (out) {
+                    deflater.end(); // Only once no response is being written
+                }
+            }
+        }
+    }
+
+    // Runs one request on the request executor and writes its response when it completes
+    private void dispatch(FrameProtocol.RequestHeader header, Path upload) {
+        requestExecutor.execute(() -> {
+            try {
+                BatchRequest.Partials partials = text -> writeResponse(header.requestId(), FrameProtocol.STATUS_PARTIAL, new ServerResponse(text));
+                ServerResponse response = handler.processAdmittedRequest(header.fileName(), header.option(), header.countOption(), upload, partials);
+                writeResponse(header.requestId(), FrameProtocol.STATUS_OK, response);
+            } catch (IOException | InterruptedException e) {
+                ServerLog.error("Failed to answer request " + header.requestId(), e);
+            } catch (RuntimeException e) {
+                // The client still waits for a final frame for this request id
+                ServerLog.error("Request " + header.requestId() + " failed", e);
+                try {
+                    writeResponse(header.requestId(), FrameProtocol.STATUS_ERROR, new ServerResponse("Request failed."));
+                } catch (IOException writeFailure) {
+                    ServerLog.error("Failed to answer request " + header.requestId(), writeFailure);
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    // Writes a complete response frame; frames from concurrent requests never interleave
+    private void writeResponse(int requestId, byte status, ServerResponse response) throws IOException {
+        synchronized (out) {
+            if (clientSocket.isClosed()) {
+                response.close();
+                throw new IOException("Session closed before request " + requestId + " was answered");
+            }
+            long length = response.length();
+            ClientHandler.METRICS.addBytesOut(length);
+            FrameProtocol.writeResponseHeader(out, requestId, status, length);
+            response.writeTo(compressedOut != null ? compressedOut : out, clientSocket.getChannel());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package clientserver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram records non-negative values, typically latencies in nanoseconds, in log-linear buckets in the
+ * style of HdrHistogram: values below 256 are exact and larger values keep 8 significant bits, so any percentile is
+ * reported within 1% of the true value while the histogram stays a fixed array of about 7,300 counters.
+ * Recording is a lock-free increment and may run on several threads; histograms of the same shape can be merged.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7; // Each power of two above 256 is split into 128 buckets
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS; // Values below this have a bucket each
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records one value.
+     * @param value Value to record, negative values count as 0
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(Math.max(0, value)));
+    }
+
+    /**
+     * Adds every value recorded by another histogram.
+     * @param other Histogram to merge in
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    // Number of recorded values
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall.
+     * @param percentile Percentage between 0 and 100, e.g. 99.9
+     * @return Upper bound of the bucket holding that value, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKET_COUNT - 1);
+    }
+
+    // Largest recorded value, to bucket precision
+    public long max() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    // Bucket index of a value: exact below LINEAR_LIMIT, then SUB_BUCKETS buckets per power of two
+    private static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS; // At least 1
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS; // Top 8 bits without the leading one
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Largest value that falls into a bucket
+    private static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long top = SUB_BUCKETS + (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
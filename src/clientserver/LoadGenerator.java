@@ -0,0 +1,322 @@
+package clientserver;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * LoadGenerator drives a running Server with a configurable request mix over persistent framed connections and
+ * reports throughput and latency percentiles, for capacity planning over loopback.
+ *
+ * With a target rate (load.rate) it runs open-loop: every request has an intended send time on a fixed schedule,
+ * and its latency is measured from that time rather than from when it was actually sent. A server that stalls
+ * therefore shows up in the percentiles instead of silently slowing the generator down (coordinated omission).
+ * Without a rate it runs closed-loop, each connection sending its next request as soon as the previous one is answered.
+ *
+ * Configured through system properties:
+ * load.host / load.port (default localhost:8080), load.connections (default 8), load.rate (requests per second over
+ * all connections, default 0 = closed-loop), load.seconds (measured duration, default 30), load.warmupSeconds
+ * (default 5), load.mix (option weights, default read=60,totals=30,store=5,update=5), load.files (files the requests
+ * spread over, default 16), load.fileSizes (size weights of stored files, default 1k=70,64k=25,1m=5) and
+ * load.compression (negotiate compressed frames, default false).
+ * Usage: java -Dload.rate=2000 clientserver.LoadGenerator, or java -Dclient.mode=load clientserver.Client
+ */
+public class LoadGenerator {
+    private static final int MAX_IN_FLIGHT = 32; // Pipelined requests the server accepts per connection
+    private static final String FILE_PREFIX = "load-";
+    // The server answers failed requests with STATUS_OK and one of these messages in the body
+    private static final String[] FAILURES = {"Failed to", "Invalid", "does not exist", "only available to local clients"};
+    private static final int MAX_FAILURE_BODY = 4096; // Longer bodies carry file content and are never failures
+
+    private final String host = System.getProperty("load.host", "localhost");
+    private final int port = Integer.getInteger("load.port", 8080);
+    private final int connections = Integer.getInteger("load.connections", 8);
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+    private final int seconds = Integer.getInteger("load.seconds", 30);
+    private final int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+    private final int files = Integer.getInteger("load.files", 16);
+    private final boolean compression = Boolean.getBoolean("load.compression");
+    private final Weighted<String> mix = Weighted.parse(System.getProperty("load.mix", "read=60,totals=30,store=5,update=5"), value -> value);
+    private final Weighted<byte[]> payloads = Weighted.parse(System.getProperty("load.fileSizes", "1k=70,64k=25,1m=5"), LoadGenerator::textOfSize);
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>(); // Measured latencies per option
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong maxSendLag = new AtomicLong(); // Furthest an open-loop sender fell behind its schedule
+    private volatile long measureStart;
+    private volatile long measureEnd;
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator().run();
+    }
+
+    // Stores the files, runs every connection until the end of the measurement and prints the report
+    private void run() throws Exception {
+        for (String option : mix.values()) {
+            latencies.put(option, new LatencyHistogram());
+        }
+        System.out.println("Storing " + files + " files on " + host + ":" + port);
+        Session setup = new Session();
+        for (int i = 0; i < files; i++) {
+            setup.send(FILE_PREFIX + i, "store", payloads.pick(), System.nanoTime());
+        }
+        setup.close();
+
+        long start = System.nanoTime();
+        measureStart = start + warmupSeconds * 1_000_000_000L;
+        measureEnd = measureStart + seconds * 1_000_000_000L;
+        System.out.println((rate > 0 ? "Open-loop at " + rate + " requests/s" : "Closed-loop") + " over " + connections
+                + " connections, " + warmupSeconds + "s warmup, " + seconds + "s measured");
+
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int c = 0; c < connections; c++) {
+            long offset = rate > 0 ? (long) (c * 1e9 / rate) : 0; // Staggers the connections' schedules
+            Thread thread = new Thread(() -> {
+                try {
+                    drive(start + offset);
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                    errors.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-connection-" + c);
+            thread.start();
+        }
+        done.await();
+        report();
+
+        Session cleanup = new Session();
+        for (int i = 0; i < files; i++) {
+            cleanup.send(FILE_PREFIX + i, "remove", null, System.nanoTime());
+        }
+        cleanup.close();
+    }
+
+    // Sends requests on one connection until the measurement ends
+    private void drive(long firstSend) throws IOException, InterruptedException {
+        Session session = new Session();
+        long interval = rate > 0 ? (long) (connections * 1e9 / rate) : 0;
+        long intended = firstSend;
+        try {
+            while (intended < measureEnd) {
+                if (interval > 0) {
+                    long wait = intended - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    intended = System.nanoTime(); // Closed-loop: a request is due as soon as it can be sent
+                }
+                String option = mix.pick();
+                String fileName = FILE_PREFIX + ThreadLocalRandom.current().nextInt(files);
+                byte[] payload = option.equals("store") || option.equals("update") || option.equals("append") ? payloads.pick() : null;
+                session.send(fileName, option, payload, intended);
+                if (interval > 0) {
+                    maxSendLag.accumulateAndGet(System.nanoTime() - intended, Math::max);
+                    intended += interval;
+                }
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    // Prints throughput and latency percentiles per option and overall
+    private void report() {
+        LatencyHistogram total = new LatencyHistogram();
+        System.out.printf("%n%-8s %10s %10s %10s %10s %10s %10s %10s%n", "option", "requests", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            printRow(entry.getKey(), entry.getValue());
+            total.add(entry.getValue());
+        }
+        printRow("all", total);
+        System.out.println("Errors: " + errors.get() + (rate > 0 ? ", max send lag: " + String.format("%.2f", maxSendLag.get() / 1e6) + " ms" : ""));
+    }
+
+    private void printRow(String name, LatencyHistogram histogram) {
+        long count = histogram.count();
+        System.out.printf("%-8s %10d %10.0f %10.2f %10.2f %10.2f %10.2f %10.2f%n", name, count, count / (double) seconds,
+                histogram.percentile(50) / 1e6, histogram.percentile(90) / 1e6, histogram.percentile(99) / 1e6,
+                histogram.percentile(99.9) / 1e6, histogram.max() / 1e6);
+    }
+
+    // Random text of roughly the given number of bytes
+    private static byte[] textOfSize(String size) {
+        String lower = size.toLowerCase();
+        long multiplier = lower.endsWith("k") ? 1024 : lower.endsWith("m") ? 1024 * 1024 : 1;
+        int length = (int) (Long.parseLong(multiplier == 1 ? lower : lower.substring(0, lower.length() - 1)) * multiplier);
+        Random random = new Random(length);
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = (byte) (random.nextInt(8) == 0 ? (random.nextInt(12) == 0 ? '\n' : ' ') : 'a' + random.nextInt(26));
+        }
+        return text;
+    }
+
+    /**
+     * One framed connection: requests are written by the calling thread and responses read by a thread of its own,
+     * which records each latency from the request's intended send time.
+     */
+    private final class Session {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final Semaphore inFlight = new Semaphore(rate > 0 ? MAX_IN_FLIGHT : 1); // Closed-loop waits for each response
+        private final Map<Integer, Request> pending = new ConcurrentHashMap<>();
+        private final Thread reader;
+        private final BlockCompression.BlockOutputStream compressedOut; // Null unless deflate was negotiated
+        private final Deflater deflater = new Deflater(BlockCompression.LEVEL);
+        private final Inflater inflater = new Inflater();
+        private int nextId;
+
+        private Session() throws IOException {
+            socket = SocketChannel.open(new InetSocketAddress(host, port)).socket();
+            socket.setTcpNoDelay(true);
+            InputStream rawIn = new BufferedInputStream(socket.getInputStream());
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.write(FrameProtocol.hello(FrameProtocol.VERSION, compression).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String reply = FrameProtocol.readLine(rawIn);
+            if (reply == null || FrameProtocol.negotiate(reply) < FrameProtocol.VERSION) {
+                socket.close();
+                throw new IOException("Server does not support protocol version " + FrameProtocol.VERSION);
+            }
+            compressedOut = compression && FrameProtocol.offersDeflate(reply) ? new BlockCompression.BlockOutputStream(out, deflater) : null;
+            DataInputStream in = new DataInputStream(rawIn);
+            reader = new Thread(() -> readResponses(in), Thread.currentThread().getName() + "-reader");
+            reader.start();
+        }
+
+        /**
+         * Sends one request, waiting first if the connection already has the maximum number in flight.
+         * @param fileName File name without extension
+         * @param option Requested option; read is sent with the lines count option it requires
+         * @param payload Upload for store/update/append, or null
+         * @param intended Time the request was due, which its latency is measured from
+         */
+        private void send(String fileName, String option, byte[] payload, long intended) throws IOException, InterruptedException {
+            inFlight.acquire();
+            int id = ++nextId;
+            pending.put(id, new Request(option, intended));
+            FrameProtocol.writeRequestHeader(out, id, FrameProtocol.OP_REQUEST, fileName, option, option.equals("read") ? "lines" : null,
+                    payload == null ? 0 : payload.length);
+            if (payload != null) {
+                (compressedOut != null ? compressedOut : out).write(payload);
+            }
+            (compressedOut != null ? compressedOut : out).flush();
+        }
+
+        // Records every response until the server closes the connection
+        private void readResponses(DataInputStream in) {
+            try {
+                while (true) {
+                    FrameProtocol.ResponseHeader header = FrameProtocol.readResponseHeader(in);
+                    InputStream body = compressedOut != null ? new BlockCompression.BlockInputStream(in, header.length(), inflater) : in;
+                    if (header.status() == FrameProtocol.STATUS_PARTIAL) {
+                        body.skipNBytes(header.length());
+                        continue; // The request completes with its last frame
+                    }
+                    boolean failed = header.status() != FrameProtocol.STATUS_OK;
+                    if (header.length() <= MAX_FAILURE_BODY) {
+                        failed |= isFailure(new String(body.readNBytes((int) header.length()), StandardCharsets.UTF_8));
+                    } else {
+                        body.skipNBytes(header.length());
+                    }
+                    long now = System.nanoTime();
+                    Request request = pending.remove(header.requestId());
+                    inFlight.release();
+                    if (request == null) {
+                        continue;
+                    }
+                    if (failed) {
+                        errors.incrementAndGet();
+                    } else if (request.intended() >= measureStart && request.intended() < measureEnd) {
+                        latencies.get(request.option()).record(now - request.intended());
+                    }
+                }
+            } catch (EOFException e) {
+                // Session closed by the server after the close frame
+            } catch (IOException e) {
+                e.printStackTrace();
+                errors.incrementAndGet();
+            }
+        }
+
+        // Waits for the outstanding responses and ends the session
+        private void close() throws IOException, InterruptedException {
+            FrameProtocol.writeRequestHeader(out, ++nextId, FrameProtocol.OP_CLOSE, "", "exit", null, 0);
+            out.flush();
+            reader.join();
+            socket.close();
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    // Whether a response body reports that the request failed
+    private static boolean isFailure(String body) {
+        for (String failure : FAILURES) {
+            if (body.contains(failure)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Request(String option, long intended) {
+    }
+
+    /**
+     * A weighted choice parsed from "name=weight,name=weight".
+     */
+    private static final class Weighted<T> {
+        private final List<T> choices = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<Integer> cumulativeWeights = new ArrayList<>();
+        private int totalWeight;
+
+        private static <T> Weighted<T> parse(String spec, Function<String, T> valueOf) {
+            Weighted<T> weighted = new Weighted<>();
+            for (String part : spec.split(",")) {
+                String[] pair = part.trim().split("=");
+                int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+                if (weight <= 0) {
+                    continue;
+                }
+                weighted.totalWeight += weight;
+                weighted.names.add(pair[0].trim());
+                weighted.choices.add(valueOf.apply(pair[0].trim()));
+                weighted.cumulativeWeights.add(weighted.totalWeight);
+            }
+            if (weighted.totalWeight == 0) {
+                throw new IllegalArgumentException("No positive weight in " + spec);
+            }
+            return weighted;
+        }
+
+        private T pick() {
+            int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (int i = 0; i < choices.size(); i++) {
+                if (roll < cumulativeWeights.get(i)) {
+                    return choices.get(i);
+                }
+            }
+            return choices.get(choices.size() - 1);
+        }
+
+        private List<String> values() {
+            return names;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package clientserver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * LruPolicy evicts the least recently used key, the policy CacheService originally used.
+ * @param <K> Key type for the cache
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+    private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true); // Access-ordered keys, eldest first
+
+    @Override
+    public void recordAccess(K key) {
+        order.get(key); // Moves the key to the most recently used end
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        order.remove(key);
+    }
+
+    @Override
+    public K victim() {
+        Iterator<K> iterator = order.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
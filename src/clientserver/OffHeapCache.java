@@ -0,0 +1,206 @@
+package clientserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * OffHeapCache is the second cache tier, holding large values such as file contents outside the Java heap.
+ * Values are kept as raw bytes in one direct ByteBuffer arena, split into fixed-size pages, so caching them
+ * creates no garbage and they can be written to a socket without being copied or re-encoded.
+ * The arena size is the byte budget; when it is full, the least recently used values are evicted.
+ *
+ * Readers get a Block and must release it once written. Pages of a block that is evicted or invalidated while
+ * still being read are only reused after the last reader releases it.
+ */
+public class OffHeapCache {
+    private final ByteBuffer arena; // Backing storage for every page
+    private final int pageSize;
+    private final int[] freePages; // Stack of unused page numbers
+    private int freeCount;
+    private final LinkedHashMap<CacheKey, Block> blocks = new LinkedHashMap<>(16, 0.75f, true); // Access-ordered, eldest first
+    private final Map<String, Set<CacheKey>> fileIndex = new HashMap<>(); // Cached keys of each file
+    private long evictions;
+
+    /**
+     * Constructor allocates the arena.
+     * @param capacity Byte budget of the tier
+     * @param pageSize Allocation unit; a value uses ceil(length / pageSize) pages
+     */
+    public OffHeapCache(int capacity, int pageSize) {
+        int pageCount = Math.max(1, capacity / pageSize);
+        this.arena = ByteBuffer.allocateDirect(pageCount * pageSize);
+        this.pageSize = pageSize;
+        this.freePages = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            freePages[i] = pageCount - 1 - i;
+        }
+        this.freeCount = pageCount;
+    }
+
+    /**
+     * Looks up a value and retains it for the caller.
+     * @param key Key to search for
+     * @return The retained block, to be released after use, or null if not cached
+     */
+    public synchronized Block get(CacheKey key) {
+        Block block = blocks.get(key);
+        if (block != null) {
+            block.references++;
+        }
+        return block;
+    }
+
+    /**
+     * Copies the first length bytes of a file into the tier, replacing any previous value of the key.
+     * Nothing is cached if the value can't fit in the whole budget or the file is shorter than length.
+     * @param key Key for the value
+     * @param source File to copy from, read with positional reads
+     * @param length Number of bytes to copy
+     * @param generation File generation the value belongs to
+     */
+    public void put(CacheKey key, FileChannel source, long length, long generation) throws IOException {
+        int pageCount = (int) ((length + pageSize - 1) / pageSize);
+        int[] pages = allocate(pageCount);
+        if (pages == null) {
+            return;
+        }
+        Block block = new Block(key, pages, (int) length, generation);
+
+        // The pages belong to no one else yet, so they are filled without holding the lock
+        boolean filled = false;
+        try {
+            long position = 0;
+            for (int page : pages) {
+                ByteBuffer slice = arena.slice(page * pageSize, (int) Math.min(pageSize, length - position));
+                while (slice.hasRemaining()) {
+                    int read = source.read(slice, position);
+                    if (read < 0) {
+                        return; // The file shrank since its length was taken
+                    }
+                    position += read;
+                }
+            }
+            filled = true;
+        } finally {
+            if (!filled) {
+                block.release();
+            }
+        }
+
+        synchronized (this) {
+            Block previous = blocks.put(key, block);
+            if (previous != null) {
+                previous.release();
+            }
+            fileIndex.computeIfAbsent(key.fileName(), fileName -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Removes every value of a file.
+     * @param fileName Filename including extension
+     */
+    public synchronized void removeFile(String fileName) {
+        Set<CacheKey> keys = fileIndex.remove(fileName);
+        if (keys != null) {
+            for (CacheKey key : keys) {
+                Block block = blocks.remove(key);
+                if (block != null) {
+                    block.release();
+                }
+            }
+        }
+    }
+
+    // Names of the files that have cached values
+    public synchronized Set<String> fileNames() {
+        return new HashSet<>(fileIndex.keySet());
+    }
+
+    // Number of values evicted to make room
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    // Bytes of the budget currently unused
+    public synchronized long freeBytes() {
+        return (long) freeCount * pageSize;
+    }
+
+    // Takes pages from the free stack, evicting least recently used values until enough are free
+    private synchronized int[] allocate(int pageCount) {
+        if (pageCount > freePages.length) {
+            return null;
+        }
+        Iterator<Block> eldest = blocks.values().iterator();
+        while (freeCount < pageCount && eldest.hasNext()) {
+            Block victim = eldest.next();
+            eldest.remove();
+            Set<CacheKey> keys = fileIndex.get(victim.key.fileName());
+            if (keys != null && keys.remove(victim.key) && keys.isEmpty()) {
+                fileIndex.remove(victim.key.fileName());
+            }
+            victim.release();
+            evictions++;
+        }
+        if (freeCount < pageCount) {
+            return null; // The remaining pages are still held by readers
+        }
+        int[] pages = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pages[i] = freePages[--freeCount];
+        }
+        return pages;
+    }
+
+    /**
+     * A cached value: its pages in the arena and the number of holders, the cache itself being one of them.
+     */
+    public final class Block {
+        private final CacheKey key;
+        private final int[] pages;
+        private final int length;
+        private final long generation;
+        private int references = 1; // Guarded by the OffHeapCache monitor
+
+        private Block(CacheKey key, int[] pages, int length, long generation) {
+            this.key = key;
+            this.pages = pages;
+            this.length = length;
+            this.generation = generation;
+        }
+
+        // Size of the value in bytes
+        public int length() {
+            return length;
+        }
+
+        // File generation the value belongs to
+        public long generation() {
+            return generation;
+        }
+
+        // Read-only views of the value's pages, in order, ready for a gathering write
+        public ByteBuffer[] buffers() {
+            ByteBuffer[] buffers = new ByteBuffer[pages.length];
+            for (int i = 0; i < pages.length; i++) {
+                int size = Math.min(pageSize, length - i * pageSize);
+                buffers[i] = arena.slice(pages[i] * pageSize, size).asReadOnlyBuffer();
+            }
+            return buffers;
+        }
+
+        // Drops one reference; the pages return to the free stack when none are left
+        public void release() {
+            synchronized (OffHeapCache.this) {
+                if (--references == 0) {
+                    for (int page : pages) {
+                        freePages[freeCount++] = page;
+                    }
+                }
+            }
+        }
+    }
+}
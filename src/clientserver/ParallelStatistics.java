@@ -0,0 +1,92 @@
+package clientserver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelStatistics counts very large files by splitting them into byte ranges that are memory-mapped and
+ * counted on a ForkJoinPool, then merged with FileStatistics.append. Files below server.parallelThreshold
+ * (default 64 MB) use the sequential FileStatistics.scan, where splitting costs more than it saves.
+ * Compressed stored files are counted one decompressed block at a time instead.
+ */
+public class ParallelStatistics extends RecursiveTask<FileStatistics> {
+    static final long PARALLEL_THRESHOLD = Long.getLong("server.parallelThreshold", 64L * 1024 * 1024);
+    private static final long RANGE_SIZE = 8L * 1024 * 1024; // Bytes mapped and counted by one leaf task
+    private static final long serialVersionUID = 1L; // Tasks are never serialized, ForkJoinTask just happens to be Serializable
+
+    private final transient FileChannel channel;
+    private final long start;
+    private final long end;
+    private final long rangeSize;
+
+    private ParallelStatistics(FileChannel channel, long start, long end, long rangeSize) {
+        this.channel = channel;
+        this.start = start;
+        this.end = end;
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * Scans a file on the common ForkJoinPool, or sequentially if it is below the threshold.
+     * @param path File to scan
+     * @return Statistics of the whole file
+     */
+    public static FileStatistics scan(Path path) throws IOException {
+        return scan(path, ForkJoinPool.commonPool(), PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Scans a file on the given pool, or sequentially if it is below the threshold.
+     * @param path File to scan
+     * @param pool Pool running the range tasks
+     * @param threshold Smallest file size counted in parallel
+     * @return Statistics of the whole file
+     */
+    public static FileStatistics scan(Path path, ForkJoinPool pool, long threshold) throws IOException {
+        return scan(path, pool, threshold, RANGE_SIZE);
+    }
+
+    // Same as scan(path, pool, threshold) with leaf ranges of the given size, so tests can stitch many small ranges
+    static FileStatistics scan(Path path, ForkJoinPool pool, long threshold, long rangeSize) throws IOException {
+        if (BlockCompression.isCompressed(path)) {
+            return BlockCompression.count(path);
+        }
+        if (Files.size(path) < threshold) {
+            return FileStatistics.scan(path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return pool.invoke(new ParallelStatistics(channel, 0, channel.size(), rangeSize));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    protected FileStatistics compute() {
+        if (end - start <= rangeSize) {
+            try {
+                FileStatistics statistics = new FileStatistics();
+                statistics.update(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                return statistics;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Split on a range boundary; the merge fixes words, line terminators and characters cut in half
+        long middle = start + Math.max(rangeSize, (end - start) / 2 / rangeSize * rangeSize);
+        ParallelStatistics left = new ParallelStatistics(channel, start, middle, rangeSize);
+        ParallelStatistics right = new ParallelStatistics(channel, middle, end, rangeSize);
+        left.fork();
+        FileStatistics rightStatistics = right.compute();
+        FileStatistics statistics = left.join();
+        statistics.append(rightStatistics);
+        return statistics;
+    }
+}
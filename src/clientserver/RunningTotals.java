@@ -0,0 +1,95 @@
+package clientserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RunningTotals keeps the complete FileStatistics of every scanned file, including the boundary state at its end,
+ * so an append can be counted by scanning only the appended bytes and merging them with FileStatistics.append.
+ * A tally is only trusted while the file still has the cache generation, size and modification time it was
+ * recorded with; anything else means the file changed in a way the tally doesn't know about.
+ * The size and modification time also stamp the cached counts of that generation when they are saved in a
+ * CacheSnapshot, so a snapshot never pairs counts with attributes of a later version of the file.
+ * For a compressed file, a current tally also gives the extent of its blocks without reading their headers.
+ */
+public class RunningTotals {
+    private final ConcurrentHashMap<String, Tally> tallies = new ConcurrentHashMap<>();
+
+    /**
+     * Records the statistics of a whole file.
+     * @param fileName Filename including extension
+     * @param statistics Statistics covering every byte of the file
+     * @param version Cache generation of the file the statistics belong to
+     * @param stamp Size and modification time of the file the statistics were counted from
+     */
+    public void record(String fileName, FileStatistics statistics, long version, Stamp stamp) {
+        tallies.put(fileName, new Tally(statistics, version, stamp));
+    }
+
+    /**
+     * Looks up the statistics of a file if they still describe it.
+     * @param fileName Filename including extension
+     * @param version Current cache generation of the file
+     * @param stamp Current size and modification time of the file
+     * @return The statistics, or null if there are none or they are out of date
+     */
+    public FileStatistics current(String fileName, long version, Stamp stamp) {
+        Tally tally = tallies.get(fileName);
+        return tally == null || tally.version() != version || !tally.stamp().equals(stamp) ? null : tally.statistics();
+    }
+
+    /**
+     * Finds the blocks of a compressed file from its tally, so a read doesn't walk every block header.
+     * @param fileName Filename including extension
+     * @param version Current cache generation of the file
+     * @param stamp Size and modification time of the file when it was opened
+     * @return End and content length of the blocks, or null if the tally is missing or out of date
+     */
+    public BlockCompression.Extent extent(String fileName, long version, Stamp stamp) {
+        FileStatistics statistics = current(fileName, version, stamp);
+        return statistics == null ? null : new BlockCompression.Extent(stamp.size(), statistics.bytes());
+    }
+
+    /**
+     * Records the size and modification time that counts restored from a snapshot were taken at, without the
+     * statistics themselves, so later snapshots can keep saving those counts.
+     * @param fileName Filename including extension
+     * @param version Cache generation the restored counts were written with
+     * @param stamp Size and modification time saved with the counts
+     */
+    public void recordStamp(String fileName, long version, Stamp stamp) {
+        tallies.put(fileName, new Tally(null, version, stamp));
+    }
+
+    /**
+     * Returns the size and modification time a file had when the counts of a cache generation were computed.
+     * @param fileName Filename including extension
+     * @param version Cache generation of the counts
+     * @return The stamp, or null if the counts of that generation have none
+     */
+    public Stamp stamp(String fileName, long version) {
+        Tally tally = tallies.get(fileName);
+        return tally == null || tally.version() != version ? null : tally.stamp();
+    }
+
+    // Forgets the statistics of a replaced or removed file
+    public void remove(String fileName) {
+        tallies.remove(fileName);
+    }
+
+    // Size and modification time of a file, in milliseconds since the epoch
+    public record Stamp(long size, long modifiedTime) {
+        // Reads the current stamp of a file
+        public static Stamp of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    // Statistics of a file, or null if only its stamp is known
+    private record Tally(FileStatistics statistics, long version, Stamp stamp) {
+    }
+}
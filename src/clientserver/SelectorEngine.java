@@ -0,0 +1,104 @@
+package clientserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * SelectorEngine accepts connections on a single non-blocking event loop and only hands a connection to the
+ * fixed worker pool once its request is readable. Idle or slow clients therefore cost a registered channel
+ * instead of a parked thread.
+ */
+public class SelectorEngine {
+    private final int port;
+    private final ExecutorService workers;
+    private final Semaphore semaphore;
+    private final CacheService<String> sharedCache;
+    private final ExecutorService requestExecutor;
+
+    /**
+     * Constructor for SelectorEngine.
+     * @param port Port to listen on
+     * @param workerCount Number of worker threads running ClientHandler
+     * @param semaphore Semaphore limiting simultaneous requests
+     * @param sharedCache Shared cache among clients
+     * @param requestExecutor Executor running pipelined requests of framed sessions
+     */
+    public SelectorEngine(int port, int workerCount, Semaphore semaphore, CacheService<String> sharedCache, ExecutorService requestExecutor) {
+        this.port = port;
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.semaphore = semaphore;
+        this.sharedCache = sharedCache;
+        this.requestExecutor = requestExecutor;
+    }
+
+    // Runs the event loop until the selector or server channel fails
+    public void run() throws IOException {
+        try (Selector selector = Selector.open();
+             ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            List<SocketChannel> readyChannels = new ArrayList<>();
+            while (true) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(serverChannel, selector);
+                    } else if (key.isReadable()) {
+                        // The request has arrived, stop watching the channel and pass it to a worker
+                        key.cancel();
+                        readyChannels.add((SocketChannel) key.channel());
+                    }
+                }
+
+                if (!readyChannels.isEmpty()) {
+                    selector.selectNow(); // Flushes the cancelled keys so the channels can switch back to blocking mode
+                    for (SocketChannel channel : readyChannels) {
+                        dispatch(channel);
+                    }
+                    readyChannels.clear();
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    // Accepts every pending connection and registers it for read readiness
+    private void accept(ServerSocketChannel serverChannel, Selector selector) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+    }
+
+    // Hands a readable connection to the worker pool, where the existing blocking ClientHandler processes it
+    private void dispatch(SocketChannel channel) {
+        try {
+            channel.configureBlocking(true);
+            workers.execute(new ClientHandler(channel.socket(), semaphore, sharedCache, requestExecutor));
+        } catch (IOException e) {
+            ServerLog.error("Failed to hand over a connection", e);
+            try {
+                channel.close();
+            } catch (IOException closeException) {
+                ServerLog.error("Failed to close a connection", closeException);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package clientserver;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Semaphore;
+
+public class Server {
+    private static CacheService<String> sharedCache = createCache(); // Creates a shared cache, by default with a maximum size of 6 keys
+    private static ExecutorService requestExecutor; // Runs pipelined requests of framed sessions
+    private static final Path storageDirectory = Paths.get("src", "storageFiles");
+
+    /**
+     * Starts the server. The connection engine and admission control are configured through system properties:
+     * server.port (default 8080), server.engine (threads/nio/virtual, default threads),
+     * server.permits (simultaneous requests, default 5) and server.workers (nio worker pool size, default permits).
+     * @param args Unused
+     */
+    public static void main(String[] args) {
+        int port = Integer.getInteger("server.port", 8080);
+        String engine = System.getProperty("server.engine", "threads");
+        int permits = Integer.getInteger("server.permits", 5);
+        Semaphore serverSemaphore = new Semaphore(permits); // Limits the number of simultaneous requests
+        requestExecutor = Executors.newFixedThreadPool(permits);
+        ClientHandler.METRICS.register(sharedCache);
+        startCacheSnapshots();
+        startStorageWatcher();
+
+        try {
+            switch (engine) {
+                case "nio":
+                    int workers = Integer.getInteger("server.workers", permits);
+                    new SelectorEngine(port, workers, serverSemaphore, sharedCache, requestExecutor).run();
+                    break;
+                case "virtual":
+                    runVirtualThreads(port, serverSemaphore);
+                    break;
+                case "threads":
+                    runThreadPerConnection(port, serverSemaphore);
+                    break;
+                default:
+                    System.out.println("Unknown server.engine: " + engine + ". Supported engines: threads, nio, virtual");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the shared cache from system properties: server.cacheSize (maximum entries, default 6),
+     * server.cacheMaxBytes (bounds the cache by value bytes instead of entries when set) and
+     * server.cachePolicy (lru or tinylfu, default lru) and server.offHeapBytes (budget of the off-heap tier for
+     * file contents, default 64 MB, 0 to disable).
+     * @return The configured cache
+     */
+    private static CacheService<String> createCache() {
+        String policy = System.getProperty("server.cachePolicy", "lru");
+        long maxBytes = Long.getLong("server.cacheMaxBytes", 0L);
+        int offHeapBytes = Integer.getInteger("server.offHeapBytes", 64 * 1024 * 1024);
+        OffHeapCache offHeapTier = offHeapBytes > 0 ? new OffHeapCache(offHeapBytes, 16 * 1024) : null;
+        if (maxBytes > 0) {
+            return new CacheService<>(maxBytes, value -> 2L * value.length(), () -> EvictionPolicy.named(policy), offHeapTier);
+        }
+        return new CacheService<>(Integer.getInteger("server.cacheSize", 6), value -> 1, () -> EvictionPolicy.named(policy), offHeapTier);
+    }
+
+    /**
+     * Warms the cache from the last snapshot and keeps saving new ones in the background, configured by
+     * server.snapshotFile (default src/cache.snapshot) and server.snapshotIntervalSeconds (default 60, 0 disables).
+     */
+    private static void startCacheSnapshots() {
+        long interval = Long.getLong("server.snapshotIntervalSeconds", 60);
+        if (interval <= 0) {
+            return;
+        }
+        Path snapshotFile = Paths.get(System.getProperty("server.snapshotFile", "src/cache.snapshot"));
+        try {
+            int loaded = CacheSnapshot.load(sharedCache, ClientHandler.RUNNING_TOTALS, snapshotFile, storageDirectory);
+            System.out.println("Loaded " + loaded + " cache entries from " + snapshotFile);
+        } catch (IOException e) {
+            e.printStackTrace(); // An unreadable snapshot only means a cold start
+        }
+
+        Runnable saveSnapshot = () -> {
+            try {
+                CacheSnapshot.save(sharedCache, ClientHandler.RUNNING_TOTALS, snapshotFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(saveSnapshot, interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(saveSnapshot));
+    }
+
+    /**
+     * Watches the storage directory for changes made outside the server, configured by server.watchStorage
+     * (default true), server.precompute (scan changed files in the background, default false) and
+     * server.precomputeThreads (default 1).
+     */
+    private static void startStorageWatcher() {
+        if (!Boolean.parseBoolean(System.getProperty("server.watchStorage", "true"))) {
+            return;
+        }
+        int precomputeThreads = Boolean.getBoolean("server.precompute") ? Integer.getInteger("server.precomputeThreads", 1) : 0;
+        try {
+            Thread watcher = new Thread(new StorageWatcher(sharedCache, storageDirectory, precomputeThreads), "storage-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            e.printStackTrace(); // Without a watcher, only changes made through the server invalidate the cache
+        }
+    }
+
+    // Original design: one platform thread per accepted connection
+    private static void runThreadPerConnection(int port, Semaphore serverSemaphore) throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open().bind(new InetSocketAddress(port))) {
+            while (true) {
+                Socket clientSocket = serverChannel.accept().socket(); // Channel-backed, so responses can use transferTo
+                Thread clientThread = new Thread(new ClientHandler(clientSocket, serverSemaphore, sharedCache, requestExecutor));
+                clientThread.start();
+            }
+        }
+    }
+
+    // One virtual thread per accepted connection, so connections waiting on the semaphore don't pin platform threads
+    private static void runVirtualThreads(int port, Semaphore serverSemaphore) throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open().bind(new InetSocketAddress(port));
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                Socket clientSocket = serverChannel.accept().socket(); // Channel-backed, so responses can use transferTo
+                executor.execute(new ClientHandler(clientSocket, serverSemaphore, sharedCache, requestExecutor));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package clientserver;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * ServerLog writes the server's log lines to standard output from a background thread, so request threads never
+ * wait on the console. Lines go through a bounded queue; when it is full they are dropped and counted instead of
+ * blocking. Per-request trace lines are also sampled: only about one in server.traceSampleEvery (default 1000,
+ * 0 disables tracing) is built and queued, and building the text is skipped entirely for the others.
+ */
+public final class ServerLog {
+    private static final int QUEUE_SIZE = 8192;
+    private static final int TRACE_SAMPLE_EVERY = Integer.getInteger("server.traceSampleEvery", 1000);
+
+    private static final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private static final LongAdder dropped = new LongAdder();
+
+    static {
+        Thread writer = new Thread(ServerLog::writeLines, "server-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private ServerLog() {
+    }
+
+    /**
+     * Logs a line.
+     * @param message Line to log
+     */
+    public static void info(String message) {
+        enqueue(message);
+    }
+
+    /**
+     * Logs a failure with its stack trace.
+     * @param context What the server was doing
+     * @param e The failure
+     */
+    public static void error(String context, Throwable e) {
+        StringWriter trace = new StringWriter();
+        e.printStackTrace(new PrintWriter(trace));
+        enqueue(context + ": " + trace);
+    }
+
+    /**
+     * Logs a sampled per-request line; the message is only built for the sampled calls.
+     * @param message Builds the line
+     */
+    public static void trace(Supplier<String> message) {
+        if (TRACE_SAMPLE_EVERY > 0 && ThreadLocalRandom.current().nextInt(TRACE_SAMPLE_EVERY) == 0) {
+            enqueue(message.get());
+        }
+    }
+
+    // Number of lines dropped because the queue was full
+    public static long droppedCount() {
+        return dropped.sum();
+    }
+
+    private static void enqueue(String line) {
+        if (!queue.offer(line)) {
+            dropped.increment();
+        }
+    }
+
+    // Writer thread: prints queued lines in order
+    private static void writeLines() {
+        try {
+            while (true) {
+                System.out.println(queue.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package clientserver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * ServerMetrics collects the server's counters: requests and processing-time histograms per option, bytes in and
+ * out, and time spent waiting for a semaphore permit, next to the hit, miss and eviction counters of the cache and
+ * the evictions and free bytes of its off-heap tier.
+ * Recording is a LongAdder increment or a lock-free histogram update, cheap enough for every request.
+ * The metrics are read over JMX and through the stats command.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    private static final String[] KNOWN_OPTIONS = {"get", "read", "totals", "store", "update", "append", "remove", "exit", "stats", "batch"};
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder semaphoreWaitNanos = new LongAdder();
+    private final LatencyHistogram semaphoreWaits = new LatencyHistogram();
+    private volatile CacheService<?> cache; // Set once the server's cache is registered
+
+    /**
+     * Reports the given cache's counters and registers the metrics with the platform MBean server.
+     * @param cache The server's shared cache
+     */
+    public void register(CacheService<?> cache) {
+        this.cache = cache;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("Server:type=Metrics"));
+        } catch (JMException e) {
+            ServerLog.error("Failed to register the metrics MBean", e);
+        }
+    }
+
+    /**
+     * Records one processed request.
+     * @param option Requested option, as sent by the client
+     * @param waitNanos Time spent waiting for a semaphore permit
+     * @param processingNanos Time spent processing once admitted
+     */
+    public void recordRequest(String option, long waitNanos, long processingNanos) {
+        String name = metricName(option);
+        requests.computeIfAbsent(name, key -> new LongAdder()).increment();
+        latencies.computeIfAbsent(name, key -> new LatencyHistogram()).record(processingNanos);
+        semaphoreWaitNanos.add(waitNanos);
+        semaphoreWaits.record(waitNanos);
+    }
+
+    // Counts bytes received: request lines, frame payloads and uploads
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    // Counts bytes sent in responses
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    // Known option names are kept; anything else a client sends is counted under "other", so the maps stay small
+    private static String metricName(String option) {
+        String name = option.startsWith("get:") ? "get" : option;
+        for (String known : KNOWN_OPTIONS) {
+            if (known.equals(name)) {
+                return known;
+            }
+        }
+        return "other";
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((option, count) -> counts.put(option, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Micros() {
+        return latencyPercentile(50);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Micros() {
+        return latencyPercentile(99);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP999Micros() {
+        return latencyPercentile(99.9);
+    }
+
+    private Map<String, Long> latencyPercentile(double percentile) {
+        Map<String, Long> values = new TreeMap<>();
+        latencies.forEach((option, histogram) -> values.put(option, histogram.percentile(percentile) / 1000));
+        return values;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheCounter(CacheService::hitCount);
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheCounter(CacheService::missCount);
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return cacheCounter(CacheService::evictionCount);
+    }
+
+    @Override
+    public long getOffHeapEvictions() {
+        return cacheCounter(CacheService::offHeapEvictionCount);
+    }
+
+    @Override
+    public long getOffHeapFreeBytes() {
+        return cacheCounter(CacheService::offHeapFreeBytes);
+    }
+
+    private long cacheCounter(ToLongFunction<CacheService<?>> counter) {
+        CacheService<?> current = cache;
+        return current == null ? 0 : counter.applyAsLong(current);
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getSemaphoreWaitTotalMicros() {
+        return semaphoreWaitNanos.sum() / 1000;
+    }
+
+    @Override
+    public long getSemaphoreWaitP99Micros() {
+        return semaphoreWaits.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getDroppedLogLines() {
+        return ServerLog.droppedCount();
+    }
+
+    @Override
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Requests: ").append(getRequestCounts());
+        report.append("\nLatency p50/p99/p99.9 (us): ");
+        Map<String, Long> p50 = getLatencyP50Micros();
+        Map<String, Long> p99 = getLatencyP99Micros();
+        Map<String, Long> p999 = getLatencyP999Micros();
+        String separator = "";
+        for (String option : p50.keySet()) {
+            report.append(separator).append(option).append("=").append(p50.get(option)).append("/").append(p99.get(option)).append("/").append(p999.get(option));
+            separator = ", ";
+        }
+        report.append("\nCache: hits=").append(getCacheHits()).append(", misses=").append(getCacheMisses()).append(", evictions=").append(getCacheEvictions());
+        report.append("\nOff-heap cache: evictions=").append(getOffHeapEvictions()).append(", free bytes=").append(getOffHeapFreeBytes());
+        report.append("\nBytes: in=").append(getBytesIn()).append(", out=").append(getBytesOut());
+        report.append("\nSemaphore wait: total=").append(getSemaphoreWaitTotalMicros()).append(" us, p99=").append(getSemaphoreWaitP99Micros()).append(" us");
+        report.append("\nDropped log lines: ").append(getDroppedLogLines());
+        return report.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package clientserver;
+
+import java.util.Map;
+
+/**
+ * Management interface of ServerMetrics, exposed over JMX as Server:type=Metrics.
+ */
+public interface ServerMetricsMXBean {
+    // Requests processed per option
+    Map<String, Long> getRequestCounts();
+
+    // Median processing time per option, in microseconds
+    Map<String, Long> getLatencyP50Micros();
+
+    // 99th percentile processing time per option, in microseconds
+    Map<String, Long> getLatencyP99Micros();
+
+    // 99.9th percentile processing time per option, in microseconds
+    Map<String, Long> getLatencyP999Micros();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    // Values the off-heap tier evicted to stay within its byte budget
+    long getOffHeapEvictions();
+
+    // Unused bytes of the off-heap tier's budget
+    long getOffHeapFreeBytes();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    // Time requests spent waiting for a semaphore permit, in microseconds
+    long getSemaphoreWaitTotalMicros();
+
+    long getSemaphoreWaitP99Micros();
+
+    // Log lines dropped because the log queue was full
+    long getDroppedLogLines();
+
+    // All metrics as text, as returned by the stats command
+    String report();
+}
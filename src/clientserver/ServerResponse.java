@@ -0,0 +1,219 @@
+package clientserver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ServerResponse is the response to one request: text built like a StringBuilder, interleaved with file regions
+ * that are sent with FileChannel.transferTo instead of being loaded onto the heap, and off-heap cache blocks
+ * that are sent with a gathering write. Compressed stored files are decompressed block by block while being sent,
+ * except on a compressed connection, where their blocks are already in the wire format and go out as they are.
+ * A file region keeps the file open from the moment it is appended, so the bytes sent belong to the version of the
+ * file that existed when the request was processed, even if it is replaced before the response is written.
+ */
+public class ServerResponse {
+    private final List<Object> parts = new ArrayList<>(); // byte[] text parts, FileRegion and Block parts, in order
+    private final StringBuilder text = new StringBuilder(); // Text appended since the last file region
+
+    public ServerResponse() {
+    }
+
+    public ServerResponse(String text) {
+        this.text.append(text);
+    }
+
+    public ServerResponse append(String value) {
+        text.append(value);
+        return this;
+    }
+
+    public ServerResponse append(long value) {
+        text.append(value);
+        return this;
+    }
+
+    /**
+     * Appends the current content of a file without reading it.
+     * @param path File to send
+     * @return This response
+     */
+    public ServerResponse appendFile(Path path) throws IOException {
+        return appendFile(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Appends the current content of an open file without reading it. The response closes the channel.
+     * @param channel File to send
+     * @return This response
+     */
+    public ServerResponse appendFile(FileChannel channel) throws IOException {
+        if (BlockCompression.isCompressed(channel)) {
+            return appendCompressedFile(channel, null);
+        }
+        flushText();
+        parts.add(new FileRegion(channel, channel.size()));
+        return this;
+    }
+
+    /**
+     * Appends the complete blocks of an open compressed file. The response closes the channel.
+     * @param channel Compressed file to send
+     * @param extent Blocks to send if already known, or null to find them by reading the block headers
+     * @return This response
+     */
+    public ServerResponse appendCompressedFile(FileChannel channel, BlockCompression.Extent extent) throws IOException {
+        flushText();
+        BlockCompression.Extent blocks = extent != null ? extent : BlockCompression.extent(channel);
+        parts.add(new CompressedRegion(channel, blocks.end(), blocks.contentLength()));
+        return this;
+    }
+
+    /**
+     * Appends a retained off-heap cache block. The response releases it.
+     * @param block Block to send
+     * @return This response
+     */
+    public ServerResponse appendBlock(OffHeapCache.Block block) {
+        flushText();
+        parts.add(block);
+        return this;
+    }
+
+    // Number of bytes writeTo sends
+    public long length() {
+        flushText();
+        long length = 0;
+        for (Object part : parts) {
+            if (part instanceof FileRegion) {
+                length += ((FileRegion) part).size();
+            } else if (part instanceof CompressedRegion) {
+                length += ((CompressedRegion) part).contentLength();
+            } else if (part instanceof OffHeapCache.Block) {
+                length += ((OffHeapCache.Block) part).length();
+            } else {
+                length += ((byte[]) part).length;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the response and closes its file regions.
+     * @param out Stream for the text parts, a BlockOutputStream on a compressed connection
+     * @param channel Channel of the same connection for zero-copy file regions, or null to copy through out
+     */
+    public void writeTo(OutputStream out, WritableByteChannel channel) throws IOException {
+        flushText();
+        BlockCompression.BlockOutputStream compressed = out instanceof BlockCompression.BlockOutputStream ? (BlockCompression.BlockOutputStream) out : null;
+        WritableByteChannel rawChannel = compressed != null ? null : channel; // Raw parts must go through the compressing stream
+        try {
+            for (Object part : parts) {
+                if (part instanceof FileRegion) {
+                    out.flush(); // Everything before the region must reach the socket first
+                    FileRegion region = (FileRegion) part;
+                    WritableByteChannel target = rawChannel != null ? rawChannel : Channels.newChannel(out);
+                    long position = 0;
+                    while (position < region.size()) {
+                        long transferred = region.channel().transferTo(position, region.size() - position, target);
+                        if (transferred <= 0) {
+                            throw new IOException("File was truncated while being sent"); // The announced length can't be met
+                        }
+                        position += transferred;
+                    }
+                } else if (part instanceof CompressedRegion) {
+                    CompressedRegion region = (CompressedRegion) part;
+                    if (compressed != null) {
+                        compressed.writeEncoded(region.channel(), region.size(), channel);
+                    } else {
+                        BlockCompression.decompress(region.channel(), region.contentLength(), out);
+                    }
+                } else if (part instanceof OffHeapCache.Block) {
+                    out.flush();
+                    writeBuffers(((OffHeapCache.Block) part).buffers(), out, rawChannel);
+                } else {
+                    out.write((byte[]) part);
+                }
+            }
+            out.flush();
+        } finally {
+            close();
+        }
+    }
+
+    // Writes buffers straight from off-heap memory, in one gathering write where the channel supports it
+    private static void writeBuffers(ByteBuffer[] buffers, OutputStream out, WritableByteChannel channel) throws IOException {
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= gathering.write(buffers);
+            }
+            return;
+        }
+        WritableByteChannel target = channel != null ? channel : Channels.newChannel(out);
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+    }
+
+    // Releases the files and cache blocks of the response; called once it is written or won't be
+    public void close() {
+        for (Object part : parts) {
+            if (part instanceof OffHeapCache.Block) {
+                ((OffHeapCache.Block) part).release();
+            } else if (part instanceof FileRegion) {
+                closeFile(((FileRegion) part).channel());
+            } else if (part instanceof CompressedRegion) {
+                closeFile(((CompressedRegion) part).channel());
+            }
+        }
+    }
+
+    private static void closeFile(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ServerLog.error("Failed to close a response file", e);
+        }
+    }
+
+    // Text only, for responses without file regions
+    @Override
+    public String toString() {
+        flushText();
+        StringBuilder result = new StringBuilder();
+        for (Object part : parts) {
+            result.append(part instanceof byte[] ? new String((byte[]) part, StandardCharsets.UTF_8) : "<file>");
+        }
+        return result.toString();
+    }
+
+    // Moves the pending text into the part list
+    private void flushText() {
+        if (text.length() > 0) {
+            parts.add(text.toString().getBytes(StandardCharsets.UTF_8));
+            text.setLength(0);
+        }
+    }
+
+    private record FileRegion(FileChannel channel, long size) {
+    }
+
+    // Blocks of a compressed file up to size, decompressing to contentLength bytes
+    private record CompressedRegion(FileChannel channel, long size, long contentLength) {
+    }
+}
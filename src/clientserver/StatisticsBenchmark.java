@@ -0,0 +1,52 @@
+package clientserver;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * StatisticsBenchmark compares the sequential FileStatistics scan with ParallelStatistics at increasing core counts.
+ * It generates a text file of the requested size, warms both paths up and reports the best of several runs.
+ * Usage: java clientserver.StatisticsBenchmark [megabytes] [runs]
+ */
+public class StatisticsBenchmark {
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempFile("statistics-benchmark", ".txt");
+        try {
+            BenchmarkText.writeText(file, megabytes * 1024L * 1024);
+            System.out.println("File size: " + megabytes + " MB, best of " + runs + " runs");
+            report("sequential", megabytes, runs, () -> FileStatistics.scan(file));
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                report("parallel x" + parallelism, megabytes, runs, () -> ParallelStatistics.scan(file, pool, 0));
+                pool.shutdown();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // Runs a scan repeatedly and prints its best throughput
+    private static void report(String name, int megabytes, int runs, Scan scan) throws IOException {
+        scan.run(); // Warm up and page the file in
+        long best = Long.MAX_VALUE;
+        FileStatistics statistics = null;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            statistics = scan.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-14s %8.1f ms %8.0f MB/s  (lines=%d, words=%d, characters=%d)%n", name, best / 1e6,
+                megabytes / (best / 1e9), statistics.lines(), statistics.words(), statistics.characters());
+    }
+
+    private interface Scan {
+        FileStatistics run() throws IOException;
+    }
+}
@@ -0,0 +1,162 @@
+package clientserver;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StorageWatcher keeps the cache consistent with changes made to the storage directory outside the server, such as
+ * files copied in or edited by hand. Every created, modified or deleted file is invalidated in the cache, together with
+ * the names the ContentStore linked to the same content; if the watch service loses events, every cached file is.
+ * Optionally, created and modified files are scanned in the background on a small bounded executor, so the first
+ * request for their counts is already a cache hit.
+ */
+public class StorageWatcher implements Runnable {
+    private static final int PRECOMPUTE_QUEUE_SIZE = 64; // Pending scans; further changes are left for the first request
+
+    private final CacheService<String> cache;
+    private final Path directory;
+    private final WatchService watchService;
+    private final ThreadPoolExecutor precomputeExecutor; // Null when precomputation is disabled
+    private final Set<String> pendingScans = ConcurrentHashMap.newKeySet(); // Files queued but not yet scanning
+
+    /**
+     * Constructor registers the watch on the storage directory.
+     * @param cache Cache to invalidate
+     * @param directory Storage directory
+     * @param precomputeThreads Threads scanning changed files, 0 to only invalidate
+     */
+    public StorageWatcher(CacheService<String> cache, Path directory, int precomputeThreads) throws IOException {
+        this.cache = cache;
+        this.directory = directory;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        if (precomputeThreads > 0) {
+            precomputeExecutor = new ThreadPoolExecutor(precomputeThreads, precomputeThreads, 0, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(PRECOMPUTE_QUEUE_SIZE), runnable -> {
+                        Thread thread = new Thread(runnable, "cache-precompute");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        } else {
+            precomputeExecutor = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidateAll();
+                    } else {
+                        fileChanged(((Path) event.context()).toString(), event.kind() != StandardWatchEventKinds.ENTRY_DELETE);
+                    }
+                }
+                if (!key.reset()) {
+                    ServerLog.info("Storage directory is no longer accessible, stopped watching " + directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Server shutting down
+        }
+    }
+
+    // Invalidates one changed file and queues a scan of its new content
+    private void fileChanged(String fileName, boolean exists) {
+        if (fileName.startsWith(".")) {
+            return; // Upload staging and other hidden entries are never served
+        }
+        ClientHandler.DIRECTORY_INDEX.refresh(fileName);
+
+        // Waiting for the file lock lets an append made through the server finish recording its counts first
+        Set<String> aliases;
+        synchronized (ClientHandler.fileLock(fileName)) {
+            if (exists && isCurrent(fileName)) {
+                return; // Already reflected in the cache
+            }
+            if (exists) {
+                cache.handleServerRemovalRequest(fileName);
+            } else {
+                cache.handleServerDeletionRequest(fileName);
+            }
+            aliases = linkedNames(fileName);
+        }
+        if (exists) {
+            queueScan(fileName);
+        }
+
+        // Hard links of the content store changed along with the file, though no event names them
+        for (String alias : aliases) {
+            ClientHandler.DIRECTORY_INDEX.refresh(alias);
+            synchronized (ClientHandler.fileLock(alias)) {
+                cache.handleServerRemovalRequest(alias);
+                ClientHandler.RUNNING_TOTALS.remove(alias);
+            }
+            queueScan(alias);
+        }
+    }
+
+    // Lets the content store follow a change, returning the other stored names that share the changed content
+    private Set<String> linkedNames(String fileName) {
+        try {
+            return ClientHandler.CONTENT_STORE.changed(directory.resolve(fileName));
+        } catch (IOException e) {
+            ServerLog.error("Failed to follow the change of " + fileName + " in the content store", e);
+            return Set.of();
+        }
+    }
+
+    // Queues a precompute scan of a file if precomputing is enabled
+    private void queueScan(String fileName) {
+        if (precomputeExecutor != null && pendingScans.add(fileName)) {
+            // A burst of modify events queues one scan; events arriving while it runs invalidate it and queue another
+            try {
+                precomputeExecutor.execute(() -> precompute(fileName));
+            } catch (RejectedExecutionException e) {
+                pendingScans.remove(fileName); // Queue full; the first request scans it instead
+            }
+        }
+    }
+
+    // Whether the running totals of a file still match it, which means the server itself made the change
+    private boolean isCurrent(String fileName) {
+        try {
+            RunningTotals.Stamp stamp = RunningTotals.Stamp.of(directory.resolve(fileName));
+            return ClientHandler.RUNNING_TOTALS.current(fileName, cache.fileVersion(fileName), stamp) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Scans a changed file and caches its counts
+    private void precompute(String fileName) {
+        pendingScans.remove(fileName);
+        Path file = directory.resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            ClientHandler.loadStatistics(cache, directory, fileName);
+        } catch (IOException e) {
+            ServerLog.error("Failed to precompute " + fileName, e); // The file changed again or vanished; its next event or request retries
+        }
+    }
+
+    // Events were lost, so any cached file may be stale
+    private void invalidateAll() {
+        ClientHandler.DIRECTORY_INDEX.rebuild();
+        for (String fileName : cache.cachedFileNames()) {
+            cache.handleServerRemovalRequest(fileName);
+        }
+    }
+}
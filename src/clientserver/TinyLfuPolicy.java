@@ -0,0 +1,125 @@
+package clientserver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * TinyLfuPolicy implements W-TinyLFU: new keys enter a small LRU window, and when the segment is full the eldest
+ * window key only displaces the eldest main key if it has been requested more often. Access frequencies are
+ * estimated with a count-min sketch that is halved periodically, so one-off scans can't flush a hot working set.
+ * @param <K> Key type for the cache
+ */
+public class TinyLfuPolicy<K> implements EvictionPolicy<K> {
+    private static final int WINDOW_PERCENT = 1; // Share of the tracked keys kept in the admission window
+
+    private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Boolean> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch(1024);
+
+    @Override
+    public void recordAccess(K key) {
+        sketch.increment(key.hashCode());
+        if (window.get(key) == null) {
+            main.get(key);
+        }
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        sketch.increment(key.hashCode());
+        window.put(key, Boolean.TRUE);
+
+        // Keys that outgrow the window move to the main area without being evicted
+        int windowMax = Math.max(1, (window.size() + main.size()) * WINDOW_PERCENT / 100);
+        while (window.size() > windowMax) {
+            K eldest = eldest(window);
+            window.remove(eldest);
+            main.put(eldest, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+
+    @Override
+    public K victim() {
+        if (main.isEmpty()) {
+            return eldest(window);
+        }
+        if (window.isEmpty()) {
+            return eldest(main);
+        }
+
+        // The window candidate is admitted to main only if it is more popular than main's victim
+        K candidate = eldest(window);
+        K mainVictim = eldest(main);
+        if (sketch.frequency(candidate.hashCode()) > sketch.frequency(mainVictim.hashCode())) {
+            window.remove(candidate);
+            main.put(candidate, Boolean.TRUE);
+            return mainVictim;
+        }
+        return candidate;
+    }
+
+    // Returns the least recently used key of an access-ordered map
+    private static <K> K eldest(LinkedHashMap<K, Boolean> map) {
+        Iterator<K> iterator = map.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    // Count-min sketch of 4-bit counters with four hash functions, halved every 10 * width increments
+    private static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0x0e5e1d13, 0xb3c6a8e5, 0x5a2d7f41};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            this.counters = new byte[width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int seed : SEEDS) {
+                int index = indexOf(hash, seed);
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int seed : SEEDS) {
+                frequency = Math.min(frequency, counters[indexOf(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        // Ages every counter so old popularity fades
+        private void reset() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>= 1;
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int seed) {
+            int h = (hash ^ seed) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
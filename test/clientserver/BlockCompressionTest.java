@@ -0,0 +1,64 @@
+package clientserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlockCompressionTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void compressedFileRoundTrips() throws IOException {
+        Path raw = directory.resolve("raw.txt");
+        BenchmarkText.writeWords(raw, 300 * 1024);
+        Path compressed = directory.resolve("compressed.txt");
+        BlockCompression.compressFile(raw, compressed, BlockCompression.LEVEL);
+
+        try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.READ)) {
+            BlockCompression.Extent extent = BlockCompression.extent(channel);
+            assertEquals(Files.size(compressed), extent.end());
+            assertEquals(Files.size(raw), extent.contentLength());
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            BlockCompression.decompress(channel, extent.contentLength(), content);
+            assertArrayEquals(Files.readAllBytes(raw), content.toByteArray());
+        }
+        assertEquals(FileStatistics.scan(raw).words(), BlockCompression.count(compressed).words());
+    }
+
+    // Readers running while an append is writing a block see the file as it was before the block
+    @Test
+    void blockStillBeingAppendedIsLeftOut() throws IOException {
+        Path raw = directory.resolve("raw.txt");
+        BenchmarkText.writeWords(raw, 100 * 1024);
+        Path compressed = directory.resolve("compressed.txt");
+        BlockCompression.compressFile(raw, compressed, BlockCompression.LEVEL);
+        long complete = Files.size(compressed);
+
+        ByteBuffer partial = ByteBuffer.allocate(8 + 100);
+        partial.putInt(1000).putInt(500).position(partial.capacity()).flip();
+        try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(partial);
+        }
+
+        try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.READ)) {
+            BlockCompression.Extent extent = BlockCompression.extent(channel);
+            assertEquals(complete, extent.end());
+            assertEquals(Files.size(raw), extent.contentLength());
+        }
+        FileStatistics expected = FileStatistics.scan(raw);
+        FileStatistics counted = BlockCompression.count(compressed);
+        assertEquals(expected.bytes(), counted.bytes());
+        assertEquals(expected.lines(), counted.lines());
+    }
+}
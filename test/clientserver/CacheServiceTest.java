@@ -0,0 +1,128 @@
+package clientserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CacheServiceTest {
+    // The counts of one file must fit together in the default cache, or totals rescans the file every time
+    @ParameterizedTest
+    @ValueSource(strings = {"lru", "tinylfu"})
+    void defaultSizeHoldsAllCountsOfOneFile(String policy) {
+        CacheService<String> cache = new CacheService<>(6, value -> 1, () -> EvictionPolicy.named(policy), null);
+        String[] operations = {"lines", "words", "characters"};
+        for (String operation : operations) {
+            cache.handleServerWriteRequest(new CacheKey("test1.txt", operation), operation.length() + "");
+        }
+
+        for (String operation : operations) {
+            assertEquals(operation.length() + "", cache.handleServerReadRequest(new CacheKey("test1.txt", operation)));
+        }
+        assertEquals(0, cache.evictionCount());
+        assertEquals(3, cache.size());
+    }
+
+    // Callers asking for the same key while it loads share the one running load
+    @Test
+    void concurrentLoadsOfOneKeyRunTheLoaderOnce() throws Exception {
+        CacheService<String> cache = new CacheService<>(16);
+        CacheKey key = new CacheKey("a.txt", "words");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> cache.handleServerLoadRequest(key, () -> {
+                    loads.incrementAndGet();
+                    started.countDown();
+                    finish.await();
+                    return "42";
+                })));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100); // Lets the other callers reach the running load
+            finish.countDown();
+            for (Future<String> result : results) {
+                assertEquals("42", result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    // A load running when the file is removed may have read the old file, so later callers don't join it
+    @Test
+    void loadAfterRemovalDoesNotJoinTheOldLoad() throws Exception {
+        CacheService<String> cache = new CacheService<>(16);
+        CacheKey key = new CacheKey("a.txt", "words");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> old = callers.submit(() -> cache.handleServerLoadRequest(key, () -> {
+                started.countDown();
+                finish.await();
+                return "old";
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            cache.handleServerRemovalRequest("a.txt");
+
+            assertEquals("new", cache.handleServerLoadRequest(key, () -> "new"));
+            finish.countDown();
+            assertEquals("old", old.get(10, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    // A failed load is reported to its caller and the next caller loads again
+    @Test
+    void failedLoadIsNotRemembered() throws IOException {
+        CacheService<String> cache = new CacheService<>(16);
+        CacheKey key = new CacheKey("a.txt", "words");
+        assertThrows(IOException.class, () -> cache.handleServerLoadRequest(key, () -> {
+            throw new IOException("unreadable");
+        }));
+        assertEquals("42", cache.handleServerLoadRequest(key, () -> "42"));
+    }
+
+    // A deleted file forgets its generation, but counts computed before the deletion never become visible again
+    @Test
+    void deletedFileKeepsStaleValuesHidden() {
+        CacheService<String> cache = new CacheService<>(16);
+        CacheKey key = new CacheKey("a.txt", "words");
+        cache.handleServerRemovalRequest("a.txt");
+        long before = cache.fileVersion("a.txt");
+
+        cache.handleServerDeletionRequest("a.txt");
+        assertTrue(cache.fileVersion("a.txt") >= before);
+        cache.handleServerWriteRequest(key, "1", before - 1);
+        assertNull(cache.handleServerReadRequest(key));
+
+        cache.handleServerRemovalRequest("a.txt"); // Stored again
+        long after = cache.fileVersion("a.txt");
+        assertTrue(after > before);
+        cache.handleServerWriteRequest(key, "2", before);
+        assertNull(cache.handleServerReadRequest(key));
+        cache.handleServerWriteRequest(key, "3", after);
+        assertEquals("3", cache.handleServerReadRequest(key));
+    }
+}
@@ -0,0 +1,64 @@
+package clientserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CacheSnapshotTest {
+    @TempDir
+    Path directory;
+
+    // Counts of a file that changed before the snapshot was taken must not come back as counts of the new content
+    @Test
+    void countsAreSavedWithTheStampTheyWereComputedAt() throws IOException {
+        Path file = directory.resolve("a.txt");
+        Files.writeString(file, "one two\n");
+        CacheService<String> cache = new CacheService<>(16);
+        RunningTotals runningTotals = new RunningTotals();
+        long version = cache.fileVersion("a.txt");
+        FileStatistics statistics = FileStatistics.scan(file);
+        cache.handleServerWriteRequest(new CacheKey("a.txt", "words"), String.valueOf(statistics.words()), version);
+        runningTotals.record("a.txt", statistics, version, RunningTotals.Stamp.of(file));
+
+        // Changed outside the server, before any invalidation reached the cache
+        Files.writeString(file, "three\n", StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        Path snapshot = directory.resolve("cache.snapshot");
+        assertEquals(1, CacheSnapshot.save(cache, runningTotals, snapshot));
+
+        CacheService<String> restored = new CacheService<>(16);
+        assertEquals(0, CacheSnapshot.load(restored, new RunningTotals(), snapshot, directory));
+        assertNull(restored.handleServerReadRequest(new CacheKey("a.txt", "words")));
+    }
+
+    @Test
+    void unchangedCountsSurviveTwoRestarts() throws IOException {
+        Path file = directory.resolve("a.txt");
+        Files.writeString(file, "one two\n");
+        CacheService<String> cache = new CacheService<>(16);
+        RunningTotals runningTotals = new RunningTotals();
+        long version = cache.fileVersion("a.txt");
+        FileStatistics statistics = FileStatistics.scan(file);
+        cache.handleServerWriteRequest(new CacheKey("a.txt", "words"), String.valueOf(statistics.words()), version);
+        runningTotals.record("a.txt", statistics, version, RunningTotals.Stamp.of(file));
+        Path snapshot = directory.resolve("cache.snapshot");
+        CacheSnapshot.save(cache, runningTotals, snapshot);
+
+        // Counts restored from a snapshot are saved again by the next one
+        for (int restart = 0; restart < 2; restart++) {
+            CacheService<String> restored = new CacheService<>(16);
+            RunningTotals restoredTotals = new RunningTotals();
+            assertEquals(1, CacheSnapshot.load(restored, restoredTotals, snapshot, directory));
+            assertEquals("2", restored.handleServerReadRequest(new CacheKey("a.txt", "words")));
+            assertEquals(1, CacheSnapshot.save(restored, restoredTotals, snapshot));
+        }
+    }
+}
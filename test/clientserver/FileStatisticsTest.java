@@ -0,0 +1,133 @@
+package clientserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileStatisticsTest {
+    // Line terminators, every whitespace byte and UTF-8 sequences of each length, so splits land on all of them
+    private static final String[] PIECES = {"a", "word", " ", "  ", "\t", "\n", "\r", "\r\n", "\u000B", "\f", "é", "€", "😀"};
+
+    @TempDir
+    Path directory;
+
+    // The full scan agrees with counting the decoded text the way the original implementation did
+    @Test
+    void scanMatchesTheDecodedText() throws IOException {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            String text = randomText(random, random.nextInt(300));
+            Path file = directory.resolve("text.txt");
+            Files.writeString(file, text);
+
+            FileStatistics statistics = FileStatistics.scan(file);
+            String message = "text " + Arrays.toString(text.getBytes(StandardCharsets.UTF_8));
+            assertEquals(new BufferedReader(new StringReader(text)).lines().count(), statistics.lines(), message);
+            assertEquals(Arrays.stream(text.split("\\s+")).filter(word -> !word.isEmpty()).count(), statistics.words(), message);
+            assertEquals(text.length(), statistics.characters(), message);
+            assertEquals(Files.size(file), statistics.bytes(), message);
+        }
+    }
+
+    // Ranges cut at any byte, even inside a \r\n, a word or a character, add up to the statistics of the whole
+    @Test
+    void appendedRangesMatchAFullScan() {
+        Random random = new Random(2);
+        for (int round = 0; round < 500; round++) {
+            byte[] bytes = randomText(random, random.nextInt(200)).getBytes(StandardCharsets.UTF_8);
+            int[] cuts = randomCuts(random, bytes.length);
+
+            FileStatistics merged = new FileStatistics();
+            for (int i = 1; i < cuts.length; i++) {
+                merged.append(count(bytes, cuts[i - 1], cuts[i]));
+            }
+            assertSame(count(bytes, 0, bytes.length), merged, "cuts " + Arrays.toString(cuts) + " of " + Arrays.toString(bytes));
+        }
+    }
+
+    // ParallelStatistics merges halves that were themselves merged, so the grouping of the ranges must not matter
+    @Test
+    void mergedHalvesMatchAFullScan() {
+        Random random = new Random(3);
+        for (int round = 0; round < 500; round++) {
+            byte[] bytes = randomText(random, random.nextInt(200)).getBytes(StandardCharsets.UTF_8);
+            int[] cuts = randomCuts(random, bytes.length);
+            assertSame(count(bytes, 0, bytes.length), mergeTree(bytes, cuts, 0, cuts.length - 1, random),
+                    "cuts " + Arrays.toString(cuts) + " of " + Arrays.toString(bytes));
+        }
+    }
+
+    // Appends counted from the appended bytes alone, as the append option does, keep matching a rescan of the file
+    @Test
+    void countsUpdatedByAppendsMatchARescan() throws IOException {
+        Random random = new Random(4);
+        Path file = directory.resolve("appended.txt");
+        Files.writeString(file, randomText(random, 50));
+        FileStatistics statistics = FileStatistics.scan(file);
+
+        for (int round = 0; round < 200; round++) {
+            byte[] bytes = randomText(random, random.nextInt(40)).getBytes(StandardCharsets.UTF_8);
+            byte[] upload = Arrays.copyOf(bytes, random.nextInt(bytes.length + 1)); // May end inside a character
+            Files.write(file, upload, StandardOpenOption.APPEND);
+            FileStatistics appended = new FileStatistics();
+            appended.update(ByteBuffer.wrap(upload));
+            statistics.append(appended);
+            assertSame(FileStatistics.scan(file), statistics, "after append " + round);
+        }
+    }
+
+    private static String randomText(Random random, int pieces) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+
+    // Sorted offsets from 0 to length, repeats allowed so empty ranges are merged too
+    private static int[] randomCuts(Random random, int length) {
+        int[] cuts = new int[2 + random.nextInt(8)];
+        for (int i = 1; i < cuts.length - 1; i++) {
+            cuts[i] = random.nextInt(length + 1);
+        }
+        cuts[cuts.length - 1] = length;
+        Arrays.sort(cuts);
+        return cuts;
+    }
+
+    // Merges the ranges between cuts[from] and cuts[to], split at a random cut like a ForkJoin task tree
+    private static FileStatistics mergeTree(byte[] bytes, int[] cuts, int from, int to, Random random) {
+        if (to - from == 1) {
+            return count(bytes, cuts[from], cuts[to]);
+        }
+        int middle = from + 1 + random.nextInt(to - from - 1);
+        FileStatistics left = mergeTree(bytes, cuts, from, middle, random);
+        left.append(mergeTree(bytes, cuts, middle, to, random));
+        return left;
+    }
+
+    private static FileStatistics count(byte[] bytes, int start, int end) {
+        FileStatistics statistics = new FileStatistics();
+        statistics.update(ByteBuffer.wrap(bytes, start, end - start));
+        return statistics;
+    }
+
+    private static void assertSame(FileStatistics expected, FileStatistics actual, String message) {
+        assertEquals(expected.lines(), actual.lines(), message);
+        assertEquals(expected.words(), actual.words(), message);
+        assertEquals(expected.characters(), actual.characters(), message);
+        assertEquals(expected.bytes(), actual.bytes(), message);
+    }
+}
@@ -0,0 +1,22 @@
+package clientserver;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class FrameProtocolTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"PROTOCOL 1", "PROTOCOL 2", "PROTOCOL 2 deflate", "PROTOCOL 17"})
+    void acceptsHelloLines(String line) {
+        assertTrue(FrameProtocol.isHello(line));
+    }
+
+    // Text requests for files whose names start with PROTOCOL must not be taken for a hello
+    @ParameterizedTest
+    @ValueSource(strings = {"PROTOCOLX,totals", "PROTOCOL,read,lines", "PROTOCOL 2,totals", "PROTOCOL 2 gzip", "PROTOCOL", "PROTOCOL 99999999999"})
+    void rejectsOtherLines(String line) {
+        assertFalse(FrameProtocol.isHello(line));
+    }
+}
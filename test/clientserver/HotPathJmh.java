@@ -0,0 +1,137 @@
+package clientserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * HotPathJmh measures the server's hot paths in isolation: the CacheService mix, counting across file sizes and
+ * text request dispatch. Run with mvn test-compile exec:exec -Djmh.args="HotPathJmh", adding -t to vary the thread
+ * count of the cache mix. Console output of the measured code is discarded so it doesn't dominate the results.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class HotPathJmh {
+    private static final int KEY_COUNT = 4096;
+    private static final String[] OPERATIONS = {"lines", "words", "characters", "read"};
+
+    static {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @State(Scope.Benchmark)
+    public static class Cache {
+        @Param({"lru", "tinylfu"})
+        public String policy;
+
+        CacheService<String> cache;
+        CacheKey[] keys;
+
+        @Setup
+        public void setUp() {
+            cache = new CacheService<>(1024, value -> 1, () -> EvictionPolicy.named(policy), null);
+            keys = new CacheKey[KEY_COUNT];
+            for (int i = 0; i < KEY_COUNT; i++) {
+                keys[i] = new CacheKey("file" + (i / OPERATIONS.length) + ".txt", OPERATIONS[i % OPERATIONS.length]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Dice {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @State(Scope.Benchmark)
+    public static class TextFile {
+        @Param({"1", "64", "1024", "16384"})
+        public int kilobytes;
+
+        Path file;
+
+        @Setup
+        public void setUp() throws IOException {
+            file = Files.createTempFile("hotpath-jmh", ".txt");
+            BenchmarkText.writeText(file, kilobytes * 1024L);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.delete(file);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Handler {
+        @Param({"hotpath-jmh,totals", "hotpath-jmh,read,lines", "hotpath-jmh,get,words", "hotpath-jmh,bogus"})
+        public String message;
+
+        ClientHandler handler;
+        ExecutorService executor;
+        Path file;
+
+        @Setup
+        public void setUp() throws IOException {
+            file = Paths.get("src", "storageFiles", "hotpath-jmh.txt");
+            BenchmarkText.writeText(file, 16 * 1024);
+            ClientHandler.DIRECTORY_INDEX.refresh(file.getFileName().toString());
+            executor = Executors.newSingleThreadExecutor();
+            handler = new ClientHandler(null, new Semaphore(1), new CacheService<>(64), executor);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            executor.shutdown();
+            Files.deleteIfExists(file);
+            ClientHandler.DIRECTORY_INDEX.refresh(file.getFileName().toString());
+        }
+    }
+
+    // 90% reads, 9% writes, 1% file removals over a skewed key set
+    @Benchmark
+    public String cacheMix(Cache state, Dice dice) {
+        CacheKey key = state.keys[Math.min(KEY_COUNT - 1, (int) (KEY_COUNT * Math.pow(dice.random.nextDouble(), 3)))];
+        int roll = dice.random.nextInt(100);
+        if (roll < 90) {
+            return state.cache.handleServerReadRequest(key);
+        } else if (roll < 99) {
+            state.cache.handleServerWriteRequest(key, "12345");
+        } else {
+            state.cache.handleServerRemovalRequest(key.fileName());
+        }
+        return null;
+    }
+
+    @Benchmark
+    public FileStatistics sequentialCount(TextFile state) throws IOException {
+        return FileStatistics.scan(state.file);
+    }
+
+    @Benchmark
+    public FileStatistics parallelCount(TextFile state) throws IOException {
+        return ParallelStatistics.scan(state.file, ForkJoinPool.commonPool(), 0);
+    }
+
+    @Benchmark
+    public long dispatch(Handler state) throws IOException, InterruptedException {
+        ServerResponse response = state.handler.processClientMessage(state.message, InputStream.nullInputStream(), null);
+        long length = response.length();
+        response.close();
+        return length;
+    }
+}
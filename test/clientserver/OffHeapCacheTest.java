@@ -0,0 +1,134 @@
+package clientserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OffHeapCacheTest {
+    private static final int PAGE_SIZE = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void cachedValueReadsBackAcrossPages() throws IOException {
+        OffHeapCache cache = new OffHeapCache(8 * PAGE_SIZE, PAGE_SIZE);
+        byte[] content = put(cache, "a", 3 * PAGE_SIZE + 5);
+
+        OffHeapCache.Block block = cache.get(key("a"));
+        assertNotNull(block);
+        assertArrayEquals(content, bytes(block));
+        assertEquals(4 * PAGE_SIZE, 8 * PAGE_SIZE - cache.freeBytes());
+        block.release();
+        assertEquals(4 * PAGE_SIZE, 8 * PAGE_SIZE - cache.freeBytes()); // The cache still holds its own reference
+    }
+
+    // A block evicted while it is being read keeps its pages, so no later value overwrites what the reader sees
+    @Test
+    void evictedBlockStaysIntactUntilReleased() throws IOException {
+        OffHeapCache cache = new OffHeapCache(4 * PAGE_SIZE, PAGE_SIZE);
+        byte[] first = put(cache, "a", 2 * PAGE_SIZE);
+        OffHeapCache.Block reading = cache.get(key("a"));
+        put(cache, "b", 2 * PAGE_SIZE);
+        put(cache, "c", 2 * PAGE_SIZE); // Evicts a, whose pages are still read, and then b
+
+        assertNull(cache.get(key("a")));
+        assertEquals(2, cache.evictionCount());
+        assertEquals(0, cache.freeBytes());
+        assertArrayEquals(first, bytes(reading));
+
+        reading.release();
+        assertEquals(2 * PAGE_SIZE, cache.freeBytes());
+        assertNotNull(cache.get(key("c")));
+    }
+
+    // Removing a file releases the cache's references; pages held by readers follow once they are released too
+    @Test
+    void removedFileFreesItsPagesAfterTheLastReader() throws IOException {
+        OffHeapCache cache = new OffHeapCache(8 * PAGE_SIZE, PAGE_SIZE);
+        put(cache, "a", PAGE_SIZE);
+        put(cache, "b", PAGE_SIZE);
+        OffHeapCache.Block first = cache.get(key("a"));
+        OffHeapCache.Block second = cache.get(key("a"));
+
+        cache.removeFile("a.txt");
+        assertNull(cache.get(key("a")));
+        assertEquals(6 * PAGE_SIZE, cache.freeBytes());
+        first.release();
+        assertEquals(6 * PAGE_SIZE, cache.freeBytes());
+        second.release();
+        assertEquals(7 * PAGE_SIZE, cache.freeBytes());
+        assertTrue(cache.fileNames().contains("b.txt"));
+    }
+
+    // Whatever is put and read, the pages in use never exceed the budget and every page comes back once released
+    @Test
+    void staysWithinTheByteBudget() throws IOException {
+        int budget = 32 * PAGE_SIZE;
+        OffHeapCache cache = new OffHeapCache(budget, PAGE_SIZE);
+        Random random = new Random(5);
+        List<OffHeapCache.Block> readers = new ArrayList<>();
+        for (int round = 0; round < 500; round++) {
+            String name = "f" + random.nextInt(20);
+            if (random.nextBoolean()) {
+                cache.removeFile(name + ".txt"); // So a put that finds no room leaves no older value behind
+                byte[] content = put(cache, name, random.nextInt(12 * PAGE_SIZE));
+                OffHeapCache.Block block = cache.get(key(name));
+                if (block != null) {
+                    assertArrayEquals(content, bytes(block));
+                    readers.add(block);
+                }
+            } else if (!readers.isEmpty()) {
+                readers.remove(random.nextInt(readers.size())).release();
+            }
+            assertTrue(cache.freeBytes() >= 0 && cache.freeBytes() <= budget, "free bytes " + cache.freeBytes());
+        }
+        put(cache, "large", budget + 1); // Over the whole budget
+        assertNull(cache.get(key("large")));
+
+        readers.forEach(OffHeapCache.Block::release);
+        for (String name : cache.fileNames()) {
+            cache.removeFile(name);
+        }
+        assertEquals(budget, cache.freeBytes());
+    }
+
+    // Writes a file of random bytes and puts it under the words key of name.txt
+    private byte[] put(OffHeapCache cache, String name, int length) throws IOException {
+        byte[] content = new byte[length];
+        new Random(31L * name.hashCode() + length).nextBytes(content);
+        Path file = directory.resolve(name + ".txt");
+        Files.write(file, content);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            cache.put(key(name), channel, length, 0);
+        }
+        return content;
+    }
+
+    private static CacheKey key(String name) {
+        return new CacheKey(name + ".txt", "words");
+    }
+
+    private static byte[] bytes(OffHeapCache.Block block) {
+        ByteBuffer joined = ByteBuffer.allocate(block.length());
+        for (ByteBuffer buffer : block.buffers()) {
+            joined.put(buffer);
+        }
+        return joined.array();
+    }
+}
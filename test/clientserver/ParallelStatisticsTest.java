@@ -0,0 +1,59 @@
+package clientserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ParallelStatisticsTest {
+    private static final String[] PIECES = {"word", " ", "\n", "\r", "\r\n", "\t", "é", "€", "😀"};
+
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    // Tiny leaf ranges cut the file inside words, \r\n pairs and characters; the stitched counts match a full scan
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 5, 7, 64})
+    void stitchedRangesMatchASequentialScan(long rangeSize) throws IOException {
+        Random random = new Random(rangeSize);
+        for (int round = 0; round < 20; round++) {
+            StringBuilder text = new StringBuilder();
+            int pieces = random.nextInt(300); // Small, since every leaf range is a separate mapping
+            for (int i = 0; i < pieces; i++) {
+                text.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            Path file = directory.resolve("text.txt");
+            Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+            FileStatistics expected = FileStatistics.scan(file);
+            FileStatistics parallel = ParallelStatistics.scan(file, pool, 0, rangeSize);
+            String message = "range size " + rangeSize + ", round " + round;
+            assertEquals(expected.lines(), parallel.lines(), message);
+            assertEquals(expected.words(), parallel.words(), message);
+            assertEquals(expected.characters(), parallel.characters(), message);
+            assertEquals(expected.bytes(), parallel.bytes(), message);
+        }
+    }
+}